@@ -0,0 +1,112 @@
+package edu.brown.cs.assassin.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pooled connection that keeps its prepared statements open between uses,
+ * keyed by SQL text. The cache is bounded and evicts the least recently used
+ * statement. A CachedConnection is only ever used by one thread at a time (the
+ * pool lends it out exclusively), so the cache itself is not synchronized.
+ */
+public class CachedConnection {
+  private final Connection conn;
+  private final Map<String, PreparedStatement> statements;
+  private final AtomicLong hits;
+  private final AtomicLong misses;
+
+  /**
+   * Wraps a connection with a statement cache.
+   *
+   * @param conn          the connection to wrap
+   * @param maxStatements the maximum number of statements to keep open
+   * @param hits          counter incremented when a statement is reused
+   * @param misses        counter incremented when a statement is prepared
+   */
+  public CachedConnection(Connection conn, int maxStatements, AtomicLong hits,
+      AtomicLong misses) {
+    this.conn = conn;
+    this.hits = hits;
+    this.misses = misses;
+    statements = new LinkedHashMap<>(maxStatements, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+        if (size() > maxStatements) {
+          closeQuietly(eldest.getValue());
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * @return the underlying JDBC connection
+   */
+  public Connection getConnection() {
+    return conn;
+  }
+
+  /**
+   * Returns a prepared statement for the SQL text, reusing the cached one if
+   * there is one. The statement's parameters are cleared. Callers must close
+   * any ResultSet they open but must not close the statement itself.
+   *
+   * @param sqlCommand the SQL text
+   * @return a prepared statement for that SQL
+   * @throws SQLException if the statement cannot be prepared
+   */
+  public PreparedStatement prepare(String sqlCommand) throws SQLException {
+    PreparedStatement prep = statements.get(sqlCommand);
+    if (prep == null || prep.isClosed()) {
+      misses.incrementAndGet();
+      prep = conn.prepareStatement(sqlCommand);
+      statements.put(sqlCommand, prep);
+    } else {
+      hits.incrementAndGet();
+      prep.clearParameters();
+    }
+    return prep;
+  }
+
+  /**
+   * Drops a statement from the cache, e.g. after it failed to execute.
+   *
+   * @param sqlCommand the SQL text of the statement
+   */
+  public void evict(String sqlCommand) {
+    PreparedStatement prep = statements.remove(sqlCommand);
+    if (prep != null) {
+      closeQuietly(prep);
+    }
+  }
+
+  /**
+   * Closes every cached statement and the connection.
+   */
+  public void close() {
+    for (PreparedStatement prep : statements.values()) {
+      closeQuietly(prep);
+    }
+    statements.clear();
+    try {
+      conn.close();
+    } catch (SQLException e) {
+      System.err.println("Error closing database connection: " + e.getMessage());
+    }
+  }
+
+  private static void closeQuietly(PreparedStatement prep) {
+    try {
+      prep.close();
+    } catch (SQLException e) {
+      System.err.println("Error closing statement: " + e.getMessage());
+    }
+  }
+}
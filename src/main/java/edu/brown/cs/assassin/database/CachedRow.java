@@ -0,0 +1,70 @@
+package edu.brown.cs.assassin.database;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable copy of one row of a query result, with columns looked up by
+ * name. Unlike a Row, a CachedRow stays valid after the query has finished,
+ * so it can be kept in a RowCache.
+ */
+public final class CachedRow {
+  private final Map<String, Object> values;
+
+  /**
+   * Copies every column of the current row.
+   *
+   * @param row the row to copy
+   * @throws SQLException if the row cannot be read
+   */
+  public CachedRow(Row row) throws SQLException {
+    int columns = row.getColumnCount();
+    values = new HashMap<>(columns * 2);
+    for (int i = 0; i < columns; i++) {
+      values.put(row.getColumnLabel(i), row.getObject(i));
+    }
+  }
+
+  /**
+   * @param column the name of the column
+   * @return the value of the column as an int, or 0 if it is null
+   */
+  public int getInt(String column) {
+    Object value = get(column);
+    return value == null ? 0 : ((Number) value).intValue();
+  }
+
+  /**
+   * @param column the name of the column
+   * @return the value of the column as a long, or 0 if it is null
+   */
+  public long getLong(String column) {
+    Object value = get(column);
+    return value == null ? 0 : ((Number) value).longValue();
+  }
+
+  /**
+   * @param column the name of the column
+   * @return the value of the column as a String, or null if it is null
+   */
+  public String getString(String column) {
+    Object value = get(column);
+    return value == null ? null : value.toString();
+  }
+
+  /**
+   * @param column the name of the column
+   * @return whether the column holds a nonzero number
+   */
+  public boolean getBoolean(String column) {
+    return getInt(column) != 0;
+  }
+
+  private Object get(String column) {
+    if (!values.containsKey(column)) {
+      throw new IllegalArgumentException("No column named " + column);
+    }
+    return values.get(column);
+  }
+}
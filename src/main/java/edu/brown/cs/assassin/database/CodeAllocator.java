@@ -0,0 +1,213 @@
+package edu.brown.cs.assassin.database;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import edu.brown.cs.assassin.exception.DBAccessException;
+import edu.brown.cs.assassin.exception.InvalidAccessException;
+import edu.brown.cs.assassin.exception.InvalidActionException;
+
+/**
+ * Hands out game join codes, team join codes and kill codes that are unique
+ * without checking the database for each one. Every code comes from a counter
+ * that only ever goes up. The counter value is passed through a keyed
+ * permutation of the code space, so consecutive codes look unrelated and
+ * cannot be guessed without the key. Distinct counter values always give
+ * distinct codes.
+ *
+ * <p>
+ * The key and the counter are stored in the code_allocator table. Counter
+ * values are reserved from the table in blocks, so most codes are allocated in
+ * memory. A block that is not used up before the server stops is skipped.
+ *
+ * <p>
+ * Each code is formatted as NUM_CODE_WORDS words of CODE_WORD_LENGTH letters
+ * that alternate from consonants to vowels to make them easier to remember.
+ * The codes do not include q or x, to make them more pronounceable.
+ */
+public class CodeAllocator {
+  private static final int CODE_WORD_LENGTH = 6;
+  private static final int NUM_CODE_WORDS = 2;
+  private static final char[] CONSONANTS = "bcdfghjklmnprstvwyz".toCharArray();
+  private static final char[] VOWELS = "aeiou".toCharArray();
+  private static final long CODE_SPACE = codeSpace();
+
+  // The permutation is a Feistel network on 40 bit numbers, the smallest even
+  // width that covers the code space, restricted to the code space by cycle walking
+  private static final int HALF_BITS = 20;
+  private static final long HALF_MASK = (1L << HALF_BITS) - 1;
+  private static final int ROUNDS = 4;
+
+  private static final int BLOCK_SIZE = 256;
+
+  private final DBProxy db;
+  // The current block of counter values, guarded by this allocator's lock
+  private HashFunction roundFunction;
+  private long next;
+  private long limit;
+
+  /**
+   * A block of counter values reserved from the database, and the key to use
+   * with them.
+   */
+  private static final class Block {
+    private final HashFunction roundFunction;
+    private final long start;
+    private final long limit;
+
+    Block(HashFunction roundFunction, long start, long limit) {
+      this.roundFunction = roundFunction;
+      this.start = start;
+      this.limit = limit;
+    }
+  }
+
+  /**
+   * Creates an allocator that stores its state in a game database. Nothing is
+   * read from the database until the first code is allocated.
+   *
+   * @param db the game database
+   */
+  public CodeAllocator(DBProxy db) {
+    this.db = db;
+  }
+
+  /**
+   * @return a new code, different from every other code this database's
+   *         allocators have handed out
+   * @throws DBAccessException if something goes wrong with the database
+   */
+  public String nextCode() throws DBAccessException {
+    return nextCodes(1).get(0);
+  }
+
+  /**
+   * Allocates several codes at once. Only touches the database if the current
+   * block of counter values runs out, and then reserves enough for all of them.
+   * The block is reserved without holding this allocator's lock, since that
+   * takes the database's writer: a thread in a transaction can allocate codes
+   * while another waits for the writer to reserve a block.
+   *
+   * @param count the number of codes to allocate
+   * @return the new codes, all different from each other and from every other
+   *         code this database's allocators have handed out
+   * @throws DBAccessException if something goes wrong with the database
+   */
+  public List<String> nextCodes(int count) throws DBAccessException {
+    if (count <= 0) {
+      return Collections.emptyList();
+    }
+    Block reserved = null;
+    while (true) {
+      synchronized (this) {
+        // If another thread installed a block in the meantime, the reserved one
+        // is skipped
+        if (reserved != null && limit - next < count) {
+          roundFunction = reserved.roundFunction;
+          next = reserved.start;
+          limit = reserved.limit;
+        }
+        if (limit - next >= count) {
+          List<String> codes = new ArrayList<>(count);
+          for (int i = 0; i < count; i++) {
+            codes.add(encode(permute(next)));
+            next++;
+          }
+          return codes;
+        }
+      }
+      reserved = reserve(Math.max(count, BLOCK_SIZE));
+    }
+  }
+
+  private Block reserve(int size) throws DBAccessException {
+    try {
+      return db.inTransaction(() -> {
+        Long[] state = db.queryFirst("select key0, key1, next_counter from code_allocator",
+            Collections.emptyList(), row -> new Long[] {row.getLong(0), row.getLong(1),
+                row.getLong(2)});
+        if (state == null) {
+          SecureRandom random = new SecureRandom();
+          state = new Long[] {random.nextLong(), random.nextLong(), 0L};
+          db.updateDatabase("insert into code_allocator (id, key0, key1, next_counter) "
+              + "values (0, ?, ?, ?)", DBMethods.parameters(state[0], state[1], state[2]));
+        }
+        long start = state[2];
+        if (start + size > CODE_SPACE) {
+          throw new DBAccessException("There are no unused codes left.");
+        }
+        db.updateDatabase("update code_allocator set next_counter = ? where id = 0",
+            DBMethods.parameters(start + size));
+        // The key is re-read in case the table was cleared since the last block
+        return new Block(Hashing.sipHash24(state[0], state[1]), start, start + size);
+      });
+    } catch (InvalidAccessException | InvalidActionException e) {
+      throw new DBAccessException(e.getMessage());
+    }
+  }
+
+  /**
+   * Maps a counter value to a number in the code space. The Feistel network is
+   * a permutation of all 40 bit numbers, so applying it repeatedly until the
+   * result lands in the code space is a permutation of the code space. Since
+   * the code space is more than half of the 40 bit numbers, this takes fewer
+   * than two applications on average.
+   */
+  private long permute(long counter) {
+    long value = counter;
+    do {
+      value = feistel(value);
+    } while (value >= CODE_SPACE);
+    return value;
+  }
+
+  private long feistel(long value) {
+    long left = value >>> HALF_BITS;
+    long right = value & HALF_MASK;
+    for (int round = 0; round < ROUNDS; round++) {
+      long mixed = roundFunction.newHasher().putInt(round).putLong(right).hash().asLong();
+      long newRight = left ^ (mixed & HALF_MASK);
+      left = right;
+      right = newRight;
+    }
+    return (left << HALF_BITS) | right;
+  }
+
+  /**
+   * Writes a number in the code space as a code, treating each letter as a
+   * digit in base 19 (consonants) or 5 (vowels).
+   *
+   * @param value a number from 0 to one less than the number of codes
+   * @return the code for that number
+   */
+  static String encode(long value) {
+    int letters = CODE_WORD_LENGTH * NUM_CODE_WORDS;
+    char[] code = new char[letters + NUM_CODE_WORDS - 1];
+    long rest = value;
+    for (int i = letters - 1; i >= 0; i--) {
+      char[] alphabet = i % 2 == 0 ? CONSONANTS : VOWELS;
+      code[i + i / CODE_WORD_LENGTH] = alphabet[(int) (rest % alphabet.length)];
+      rest /= alphabet.length;
+      if (i % CODE_WORD_LENGTH == 0 && i != 0) {
+        code[i + i / CODE_WORD_LENGTH - 1] = ' ';
+      }
+    }
+    return new String(code);
+  }
+
+  /**
+   * @return the number of different codes
+   */
+  static long codeSpace() {
+    long size = 1;
+    for (int i = 0; i < CODE_WORD_LENGTH * NUM_CODE_WORDS; i++) {
+      size *= i % 2 == 0 ? CONSONANTS.length : VOWELS.length;
+    }
+    return size;
+  }
+}
@@ -0,0 +1,336 @@
+package edu.brown.cs.assassin.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.sqlite.SQLiteConfig;
+
+import edu.brown.cs.assassin.exception.DBAccessException;
+
+/**
+ * A pool of connections to a single SQLite database file. The database is run
+ * in WAL mode, so any number of readers can work alongside the single writer.
+ * The pool hands out up to a fixed number of reader connections, which are
+ * opened lazily, and serializes all writes through one writer connection.
+ * Every connection keeps a cache of its prepared statements; the pool counts
+ * cache hits and misses across all of them.
+ *
+ * <p>
+ * Other database files can be attached to every connection under a schema
+ * name, so queries can join across them. They are read-only on the reader
+ * connections like the main database. The writer attaches them read-write,
+ * but its transactions are DEFERRED, so it only takes an attached database's
+ * write lock if it writes to it, and writes to that database from elsewhere
+ * never wait on a game transaction. Writes to the main database are
+ * serialized by the pool, so the writer never has to upgrade a read lock
+ * while another connection holds the write lock.
+ */
+public class ConnectionPool {
+  public static final int DEFAULT_READERS = 4;
+  public static final int DEFAULT_STATEMENTS = 64;
+  private static final int BUSY_TIMEOUT_MILLIS = 5000;
+  private static final long BORROW_TIMEOUT_SECONDS = 30;
+
+  private final String filename;
+  private final int maxReaders;
+  private final Map<String, String> attachments;
+  private final BlockingQueue<CachedConnection> idleReaders;
+  private final CachedConnection writer;
+  private final ReentrantLock writeLock;
+  private final AtomicLong statementHits;
+  private final AtomicLong statementMisses;
+  private final List<Runnable> commitActions;
+  // The reader each thread in a read transaction is using
+  private final ThreadLocal<CachedConnection> pinnedReaders = new ThreadLocal<>();
+  private int openReaders;
+  private volatile boolean closed;
+
+  /**
+   * Opens a pool with the default number of readers.
+   *
+   * @param filename the path of the SQLite database
+   * @throws DBAccessException if the database cannot be opened
+   */
+  public ConnectionPool(String filename) throws DBAccessException {
+    this(filename, DEFAULT_READERS);
+  }
+
+  /**
+   * Opens a pool for a database. The writer connection is opened immediately,
+   * which also switches the database into WAL mode; readers are opened as they
+   * are first needed.
+   *
+   * @param filename   the path of the SQLite database
+   * @param maxReaders the maximum number of reader connections to open
+   * @throws DBAccessException if the database cannot be opened
+   */
+  public ConnectionPool(String filename, int maxReaders) throws DBAccessException {
+    this(filename, maxReaders, Collections.emptyMap());
+  }
+
+  /**
+   * Opens a pool for a database, with other databases attached to every
+   * connection.
+   *
+   * @param filename    the path of the SQLite database
+   * @param maxReaders  the maximum number of reader connections to open
+   * @param attachments the paths of the databases to attach, by the schema
+   *                    name to attach them as
+   * @throws DBAccessException if a database cannot be opened
+   */
+  public ConnectionPool(String filename, int maxReaders, Map<String, String> attachments)
+      throws DBAccessException {
+    if (maxReaders < 1) {
+      throw new IllegalArgumentException("A pool needs at least one reader.");
+    }
+    for (String schema : attachments.keySet()) {
+      // Schema names cannot be bound as parameters, so only allow plain names
+      if (!schema.matches("[a-z_]+")) {
+        throw new IllegalArgumentException("Invalid schema name " + schema);
+      }
+    }
+    this.filename = filename;
+    this.maxReaders = maxReaders;
+    this.attachments = new LinkedHashMap<>(attachments);
+    idleReaders = new ArrayBlockingQueue<>(maxReaders);
+    writeLock = new ReentrantLock();
+    statementHits = new AtomicLong();
+    statementMisses = new AtomicLong();
+    commitActions = new ArrayList<>();
+    writer = open(false);
+  }
+
+  private CachedConnection open(boolean readOnly) throws DBAccessException {
+    try {
+      Class.forName("org.sqlite.JDBC");
+      SQLiteConfig config = new SQLiteConfig();
+      config.setBusyTimeout(BUSY_TIMEOUT_MILLIS);
+      if (readOnly) {
+        config.setReadOnly(true);
+      } else {
+        // The journal mode is stored in the database file, so readers pick it up
+        config.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        config.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+        // Take each database's write lock at its first write, not when a
+        // transaction begins, so attached databases are only locked if written
+        config.setTransactionMode(SQLiteConfig.TransactionMode.DEFERRED);
+      }
+      Connection conn = config.createConnection("jdbc:sqlite:" + filename);
+      for (Map.Entry<String, String> attachment : attachments.entrySet()) {
+        try (PreparedStatement attach = conn.prepareStatement(
+            "attach database ? as " + attachment.getKey())) {
+          attach.setString(1, attachment.getValue());
+          attach.execute();
+        } catch (SQLException e) {
+          conn.close();
+          throw e;
+        }
+      }
+      return new CachedConnection(conn, DEFAULT_STATEMENTS, statementHits, statementMisses);
+    } catch (ClassNotFoundException | SQLException e) {
+      throw new DBAccessException(e.getMessage());
+    }
+  }
+
+  /**
+   * @return the path of the database this pool connects to
+   */
+  public String getFilename() {
+    return filename;
+  }
+
+  /**
+   * @return whether this pool can still hand out connections
+   */
+  public boolean isOpen() {
+    return !closed;
+  }
+
+  /**
+   * @return the number of times a cached prepared statement was reused
+   */
+  public long getStatementHits() {
+    return statementHits.get();
+  }
+
+  /**
+   * @return the number of times a statement had to be prepared
+   */
+  public long getStatementMisses() {
+    return statementMisses.get();
+  }
+
+  /**
+   * Takes a reader connection out of the pool, opening a new one if fewer than
+   * the maximum are open, or waiting for one to be returned otherwise. Every
+   * borrowed connection must be given back with releaseReader.
+   *
+   * @return a read-only connection
+   * @throws DBAccessException if the pool is closed or no reader became free
+   */
+  public CachedConnection borrowReader() throws DBAccessException {
+    checkOpen();
+    CachedConnection conn = idleReaders.poll();
+    if (conn != null) {
+      return conn;
+    }
+    synchronized (this) {
+      if (openReaders < maxReaders) {
+        conn = open(true);
+        openReaders++;
+        return conn;
+      }
+    }
+    try {
+      conn = idleReaders.poll(BORROW_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DBAccessException("Interrupted while waiting for a database connection.");
+    }
+    if (conn == null) {
+      throw new DBAccessException("Timed out waiting for a database connection.");
+    }
+    return conn;
+  }
+
+  /**
+   * Returns a reader connection to the pool.
+   *
+   * @param conn a connection previously obtained from borrowReader
+   */
+  public void releaseReader(CachedConnection conn) {
+    if (closed) {
+      conn.close();
+    } else {
+      idleReaders.offer(conn);
+    }
+  }
+
+  /**
+   * Pins a borrowed reader to the current thread, so its queries all run on it
+   * (e.g. in one read transaction), until unpinReader is called. While pinned,
+   * release leaves the reader with the thread.
+   *
+   * @param conn a connection obtained from borrowReader
+   */
+  void pinReader(CachedConnection conn) {
+    pinnedReaders.set(conn);
+  }
+
+  /**
+   * Unpins the current thread's reader. It must then be given back with
+   * releaseReader.
+   */
+  void unpinReader() {
+    pinnedReaders.remove();
+  }
+
+  /**
+   * @return the reader pinned to the current thread, or null if there is none
+   */
+  CachedConnection getPinnedReader() {
+    return pinnedReaders.get();
+  }
+
+  /**
+   * Locks and returns the writer connection. Only one thread holds the writer
+   * at a time; the lock is reentrant, and each call must be matched by a call
+   * to releaseWriter.
+   *
+   * @return the writer connection
+   * @throws DBAccessException if the pool is closed
+   */
+  public CachedConnection acquireWriter() throws DBAccessException {
+    checkOpen();
+    writeLock.lock();
+    return writer;
+  }
+
+  /**
+   * Unlocks the writer connection for other threads.
+   */
+  public void releaseWriter() {
+    writeLock.unlock();
+  }
+
+  /**
+   * @return whether the current thread holds the writer connection
+   */
+  public boolean isWriterHeldByCurrentThread() {
+    return writeLock.isHeldByCurrentThread();
+  }
+
+  /**
+   * Queues an action to run when the current transaction commits. Must only be
+   * called by the thread holding the writer.
+   *
+   * @param action the action
+   */
+  void addCommitAction(Runnable action) {
+    commitActions.add(action);
+  }
+
+  /**
+   * Removes and returns the queued commit actions. Must only be called by the
+   * thread holding the writer.
+   *
+   * @return the actions queued since the last call
+   */
+  List<Runnable> takeCommitActions() {
+    List<Runnable> actions = new ArrayList<>(commitActions);
+    commitActions.clear();
+    return actions;
+  }
+
+  /**
+   * Gives back a connection obtained from either borrowReader or acquireWriter.
+   *
+   * @param conn the connection to give back
+   */
+  public void release(CachedConnection conn) {
+    if (conn == writer) {
+      releaseWriter();
+    } else if (conn != pinnedReaders.get()) {
+      releaseReader(conn);
+    }
+  }
+
+  /**
+   * Closes every connection in the pool. Readers that are borrowed at the time
+   * are closed when they are returned.
+   */
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    CachedConnection conn = idleReaders.poll();
+    while (conn != null) {
+      conn.close();
+      conn = idleReaders.poll();
+    }
+    writeLock.lock();
+    try {
+      writer.close();
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  private void checkOpen() throws DBAccessException {
+    if (closed) {
+      throw new DBAccessException("Database not connected.");
+    }
+  }
+}
@@ -1,24 +1,21 @@
 package edu.brown.cs.assassin.database;
 
+import static edu.brown.cs.assassin.main.AssassinConstants.GAME_DATA_PATH;
+import static edu.brown.cs.assassin.main.AssassinConstants.GAME_TEST_DATA_PATH;
+import static edu.brown.cs.assassin.main.AssassinConstants.LOGIN_DATA_PATH;
+import static edu.brown.cs.assassin.main.AssassinConstants.LOGIN_TEST_DATA_PATH;
+
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
 
 import edu.brown.cs.assassin.exception.DBAccessException;
-import edu.brown.cs.assassin.game.Game;
-import edu.brown.cs.assassin.game.User;
-import edu.brown.cs.assassin.game.Player;
-import edu.brown.cs.assassin.game.Team;
-import edu.brown.cs.assassin.game.Message;
 import edu.brown.cs.assassin.game.Identifiable;
 
 /**
  * A utility class for various Assassin database operations.
  */
 public final class DBMethods {
-  private static final int CODE_WORD_LENGTH = 6;
-  private static final int NUM_CODE_WORDS = 2;
 
   private DBMethods() {
   }
@@ -28,11 +25,7 @@ public final class DBMethods {
    * user data.
    */
   public static void connectToMainDB() {
-    Game.connectToMainDB();
-    User.connectToMainDB();
-    Player.connectToMainDB();
-    Team.connectToMainDB();
-    Message.connectToMainDB();
+    DBRegistry.use(LOGIN_DATA_PATH, GAME_DATA_PATH);
   }
 
   /**
@@ -40,11 +33,7 @@ public final class DBMethods {
    * data.
    */
   public static void connectToTestDB() {
-    Game.connectToTestDB();
-    User.connectToTestDB();
-    Player.connectToTestDB();
-    Team.connectToTestDB();
-    Message.connectToTestDB();
+    DBRegistry.use(LOGIN_TEST_DATA_PATH, GAME_TEST_DATA_PATH);
   }
 
   /**
@@ -70,53 +59,25 @@ public final class DBMethods {
   }
 
   /**
-   * Generates a random code. Used for game and team join codes and for kill
-   * codes. Each code is formatted as a series of short strings which alternate
-   * from consonants to vowels to make them easier to remember. The number and
-   * size of the strings can be specified with CODE_WORD_LENGTH and
-   * NUM_CODE_WORDS. Does not include q or x to make codes more pronounceable.
+   * Allocates a new code for use as a game or team join code or a kill code.
+   * Codes never repeat, across all three uses.
    *
    * @return the code
+   * @throws DBAccessException if something goes wrong with the database
    */
-  public static String generateCode() {
-    Random r = new Random();
-    char[] vowels = "aeiou".toCharArray();
-    char[] consonants = "bcdfghjklmnprstvwyz".toCharArray();
-    StringBuilder code = new StringBuilder();
-    for (int i = 0; i < CODE_WORD_LENGTH * NUM_CODE_WORDS; i++) {
-      if (i % 2 == 0) {
-        code.append(consonants[r.nextInt(consonants.length)]);
-      } else {
-        code.append(vowels[r.nextInt(vowels.length)]);
-      }
-      if ((i + 1) % CODE_WORD_LENGTH == 0 && i != CODE_WORD_LENGTH * NUM_CODE_WORDS - 1) {
-        code.append(' ');
-      }
-    }
-    return code.toString();
+  public static String generateUniqueCode() throws DBAccessException {
+    return DBRegistry.getCodeAllocator().nextCode();
   }
 
   /**
-   * Generates a code that is guaranteed to be unique among all codes in a certain
-   * database column.
+   * Allocates several new codes at once, e.g. for every player being revived.
    *
-   * @param db     the database of the column
-   * @param table  the table of the column
-   * @param column the name of the column
-   * @return a code that is different from all the other codes in that column of
-   *         that table of that database
+   * @param count the number of codes
+   * @return the codes, all different from each other and from every other code
    * @throws DBAccessException if something goes wrong with the database
    */
-  public static String generateUniqueCode(DBProxy db, String table, String column)
-      throws DBAccessException {
-    String code = null;
-    boolean foundUniqueCode = false;
-    while (!foundUniqueCode) {
-      code = generateCode();
-      foundUniqueCode = !db.hasKey("select * from " + table + " where " + column + " = ?",
-          parameters(code));
-    }
-    return code;
+  public static List<String> generateUniqueCodes(int count) throws DBAccessException {
+    return DBRegistry.getCodeAllocator().nextCodes(count);
   }
 
   /**
@@ -1,37 +1,52 @@
 package edu.brown.cs.assassin.database;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import edu.brown.cs.assassin.exception.DBAccessException;
+import edu.brown.cs.assassin.exception.InvalidAccessException;
+import edu.brown.cs.assassin.exception.InvalidActionException;
 
 /**
  * A Generic database proxy class, which handles db connection, query execution,
- * and caching.
+ * and caching. Queries run on pooled reader connections and updates run on the
+ * pool's single writer connection, so any number of proxies can share one
+ * ConnectionPool. Prepared statements are cached on each pooled connection, so
+ * the fixed set of SQL strings used by the game classes is only parsed once per
+ * connection. Several operations can be grouped into one atomic transaction
+ * with inTransaction, and several queries can read one consistent state of
+ * the database with inReadTransaction.
  */
 public class DBProxy {
-  private Connection conn;
+  private static final String LAST_ROW_ID = "select last_insert_rowid()";
+  private final ConnectionPool pool;
+  private final Map<String, RowCache> rowCaches;
 
   /**
-   * Constructor used to connect to database.
+   * Constructor used to connect to database. Opens a new connection pool for
+   * the database.
    *
    * @param filename the name of the database to connect to.
    * @throws DBAccessException if we cannot find the database.
    */
   public DBProxy(String filename) throws DBAccessException {
-    try {
-      Class.forName("org.sqlite.JDBC");
-      String urlToDB = "jdbc:sqlite:" + filename;
-      conn = DriverManager.getConnection(urlToDB);
-    } catch (ClassNotFoundException | SQLException e) {
-      throw new DBAccessException(e.getMessage());
-    }
+    this(new ConnectionPool(filename));
+  }
+
+  /**
+   * Constructor used to share an existing connection pool.
+   *
+   * @param pool the pool of connections to the database.
+   */
+  public DBProxy(ConnectionPool pool) {
+    this.pool = pool;
+    rowCaches = new ConcurrentHashMap<>();
   }
 
   /**
@@ -40,14 +55,26 @@ public class DBProxy {
    * @return True if DB connected, false if not.
    */
   public boolean isConnected() {
-    return conn != null;
+    return pool.isOpen();
   }
 
   /**
-   * Disconnects the DB.
+   * Disconnects the DB, closing every connection in its pool.
    */
   public void disconnect() {
-    conn = null;
+    pool.close();
+  }
+
+  /**
+   * Returns this database's cache of rows for a query, creating an empty one
+   * the first time. The caches belong to the proxy, so a new proxy for the
+   * same file starts with empty caches.
+   *
+   * @param query a query for a single row, with the ID as its one parameter
+   * @return the cache of rows for that query
+   */
+  public RowCache getRowCache(String query) {
+    return rowCaches.computeIfAbsent(query, q -> new RowCache(this, q));
   }
 
   /**
@@ -62,7 +89,8 @@ public class DBProxy {
   }
 
   /**
-   * Executes SQL Query with the specified parameters.
+   * Executes SQL Query with the specified parameters, copying every cell into
+   * a String. Prefer query or forEachRow, which read typed columns directly.
    *
    * @param sqlCommand SQL Command.
    * @param parameters Parameters to be placed into SQL Command.
@@ -71,31 +99,81 @@ public class DBProxy {
    */
   public List<List<String>> executeQuery(String sqlCommand, List<String> parameters)
       throws DBAccessException {
-    if (isConnected()) {
-      try {
-        List<List<String>> result = null;
-        PreparedStatement prep = conn.prepareStatement(sqlCommand);
-        for (int i = 0; i < parameters.size(); i++) {
-          prep.setString(i + 1, parameters.get(i));
-        }
-        ResultSet rs = prep.executeQuery();
-        ResultSetMetaData rsmd = rs.getMetaData();
-        result = new ArrayList<>();
-        // Create an array of array of strings from the DB.
-        while (rs.next()) {
-          ArrayList<String> row = new ArrayList<>();
-          for (int i = 1; i < rsmd.getColumnCount() + 1; i++) {
-            row.add("" + rs.getObject(i));
-          }
-          result.add(row);
-        }
-        prep.close();
-        return result;
-      } catch (SQLException e) {
-        throw new DBAccessException(e.getMessage());
+    List<List<String>> result = new ArrayList<>();
+    // Create an array of array of strings from the DB.
+    forEachRow(sqlCommand, parameters, row -> {
+      List<String> cells = new ArrayList<>();
+      for (int i = 0; i < row.getColumnCount(); i++) {
+        cells.add("" + row.getObject(i));
       }
-    } else {
-      throw new DBAccessException("Database not connected.");
+      result.add(cells);
+    });
+    return result;
+  }
+
+  /**
+   * Executes SQL Query and passes each row to a handler as it is read, without
+   * building up the result in memory. The handler must not run queries of its
+   * own, since the reader connection is held until every row has been read.
+   *
+   * @param sqlCommand SQL Command.
+   * @param parameters Parameters to be placed into SQL Command.
+   * @param handler    Consumer of each row.
+   * @throws DBAccessException if we cannot find the database.
+   */
+  public void forEachRow(String sqlCommand, List<String> parameters, RowHandler handler)
+      throws DBAccessException {
+    CachedConnection conn = borrowReader();
+    try (ResultSet rs = prepare(conn, sqlCommand, parameters).executeQuery()) {
+      Row row = new Row(rs);
+      while (rs.next()) {
+        handler.handle(row);
+      }
+    } catch (SQLException e) {
+      conn.evict(sqlCommand);
+      throw new DBAccessException(e.getMessage());
+    } finally {
+      pool.release(conn);
+    }
+  }
+
+  /**
+   * Executes SQL Query and converts each row with a mapper.
+   *
+   * @param sqlCommand SQL Command.
+   * @param parameters Parameters to be placed into SQL Command.
+   * @param mapper     Converts a row into an object.
+   * @param <T>        Type of object each row is converted to.
+   * @return The converted rows, in order.
+   * @throws DBAccessException if we cannot find the database.
+   */
+  public <T> List<T> query(String sqlCommand, List<String> parameters, RowMapper<T> mapper)
+      throws DBAccessException {
+    List<T> result = new ArrayList<>();
+    forEachRow(sqlCommand, parameters, row -> result.add(mapper.map(row)));
+    return result;
+  }
+
+  /**
+   * Executes SQL Query and converts only its first row with a mapper.
+   *
+   * @param sqlCommand SQL Command.
+   * @param parameters Parameters to be placed into SQL Command.
+   * @param mapper     Converts a row into an object.
+   * @param <T>        Type of object the row is converted to.
+   * @return The converted first row, or null if there are no rows.
+   * @throws DBAccessException if we cannot find the database.
+   */
+  public <T> T queryFirst(String sqlCommand, List<String> parameters, RowMapper<T> mapper)
+      throws DBAccessException {
+    CachedConnection conn = borrowReader();
+    try (ResultSet rs = prepare(conn, sqlCommand, parameters).executeQuery()) {
+      return rs.next() ? mapper.map(new Row(rs)) : null;
+    } catch (SQLException e) {
+      conn.evict(sqlCommand);
+      throw new DBAccessException(e.getMessage());
+    } finally {
+      pool.release(conn);
     }
   }
 
@@ -108,22 +186,14 @@ public class DBProxy {
    * @throws DBAccessException if we cannot find the database.
    */
   public boolean hasKey(String sqlCommand, List<String> parameters) throws DBAccessException {
-    if (isConnected()) {
-      try {
-        boolean exists = false;
-        PreparedStatement prep = conn.prepareStatement(sqlCommand);
-        for (int i = 0; i < parameters.size(); i++) {
-          prep.setString(i + 1, parameters.get(i));
-        }
-        ResultSet rs = prep.executeQuery();
-        exists = rs.next();
-        prep.close();
-        return exists;
-      } catch (SQLException e) {
-        throw new DBAccessException(e.getMessage());
-      }
-    } else {
-      throw new DBAccessException("Database not connected.");
+    CachedConnection conn = borrowReader();
+    try (ResultSet rs = prepare(conn, sqlCommand, parameters).executeQuery()) {
+      return rs.next();
+    } catch (SQLException e) {
+      conn.evict(sqlCommand);
+      throw new DBAccessException(e.getMessage());
+    } finally {
+      pool.release(conn);
     }
   }
 
@@ -135,20 +205,264 @@ public class DBProxy {
    * @throws DBAccessException if we could not access the database.
    */
   public void updateDatabase(String sqlCommand, List<String> parameters) throws DBAccessException {
-    if (isConnected()) {
-      PreparedStatement prep = null;
-      try {
-        prep = conn.prepareStatement(sqlCommand);
+    CachedConnection conn = acquireWriter();
+    try {
+      prepare(conn, sqlCommand, parameters).executeUpdate();
+    } catch (SQLException e) {
+      conn.evict(sqlCommand);
+      throw new DBAccessException(e.getMessage());
+    } finally {
+      pool.releaseWriter();
+    }
+  }
+
+  /**
+   * Runs the same SQL update once for each list of parameters, as a single JDBC
+   * batch in one transaction. Either every row is written or, if any fails,
+   * none are.
+   *
+   * @param sqlCommand    the command we wish to run.
+   * @param parameterRows one list of parameters for each time the command runs.
+   * @throws DBAccessException if we could not access the database.
+   */
+  public void updateBatch(String sqlCommand, List<List<String>> parameterRows)
+      throws DBAccessException {
+    if (parameterRows.isEmpty()) {
+      return;
+    }
+    CachedConnection conn = acquireWriter();
+    Connection raw = conn.getConnection();
+    boolean ownTransaction = false;
+    try {
+      ownTransaction = raw.getAutoCommit();
+      if (ownTransaction) {
+        raw.setAutoCommit(false);
+      }
+      PreparedStatement prep = conn.prepare(sqlCommand);
+      for (List<String> parameters : parameterRows) {
         for (int i = 0; i < parameters.size(); i++) {
           prep.setString(i + 1, parameters.get(i));
         }
-        prep.executeUpdate();
-        prep.close();
-      } catch (SQLException e) {
-        throw new DBAccessException(e.getMessage());
+        prep.addBatch();
+      }
+      prep.executeBatch();
+      if (ownTransaction) {
+        raw.commit();
       }
+    } catch (SQLException e) {
+      conn.evict(sqlCommand);
+      if (ownTransaction) {
+        rollbackQuietly(raw);
+      }
+      throw new DBAccessException(e.getMessage());
+    } finally {
+      if (ownTransaction) {
+        restoreAutoCommit(raw);
+      }
+      pool.releaseWriter();
+    }
+  }
+
+  /**
+   * Runs a SQL insert and returns the row ID of the inserted row. The row ID
+   * has to be read on the connection that did the insert, so callers must use
+   * this instead of following updateDatabase with a last_insert_rowid() query.
+   *
+   * @param sqlCommand the insert command we wish to run.
+   * @param parameters the list of parameters for this specific query.
+   * @return the row ID of the inserted row.
+   * @throws DBAccessException if we could not access the database.
+   */
+  public int insert(String sqlCommand, List<String> parameters) throws DBAccessException {
+    CachedConnection conn = acquireWriter();
+    try {
+      prepare(conn, sqlCommand, parameters).executeUpdate();
+      try (ResultSet rs = conn.prepare(LAST_ROW_ID).executeQuery()) {
+        rs.next();
+        return rs.getInt(1);
+      }
+    } catch (SQLException e) {
+      conn.evict(sqlCommand);
+      throw new DBAccessException(e.getMessage());
+    } finally {
+      pool.releaseWriter();
+    }
+  }
+
+  /**
+   * Runs a unit of work inside one transaction on the writer connection. Every
+   * query and update the work makes through this proxy (or another proxy on
+   * the same pool) from this thread joins the transaction, and other threads'
+   * writes wait until it finishes. The transaction commits if the work
+   * returns normally and rolls back if it throws. If this thread is already
+   * in a transaction, the work simply becomes part of it.
+   *
+   * @param work the work to run
+   * @param <T>  the type of the work's result
+   * @return the result of the work
+   * @throws DBAccessException      if something goes wrong with the database
+   * @throws InvalidAccessException if the work throws it
+   * @throws InvalidActionException if the work throws it
+   */
+  public <T> T inTransaction(UnitOfWork<T> work)
+      throws DBAccessException, InvalidAccessException, InvalidActionException {
+    CachedConnection conn = acquireWriter();
+    try {
+      Connection raw = conn.getConnection();
+      if (!raw.getAutoCommit()) {
+        return work.run();
+      }
+      raw.setAutoCommit(false);
+      boolean committed = false;
+      try {
+        T result = work.run();
+        raw.commit();
+        committed = true;
+        return result;
+      } finally {
+        List<Runnable> actions = pool.takeCommitActions();
+        if (!committed) {
+          rollbackQuietly(raw);
+        }
+        restoreAutoCommit(raw);
+        if (committed) {
+          // Release the writer first, so the actions can use the database freely
+          pool.releaseWriter();
+          conn = null;
+          actions.forEach(Runnable::run);
+        }
+      }
+    } catch (SQLException e) {
+      throw new DBAccessException(e.getMessage());
+    } finally {
+      if (conn != null) {
+        pool.releaseWriter();
+      }
+    }
+  }
+
+  /**
+   * Runs a unit of work that only reads inside one read transaction on a single
+   * reader connection, so every query it makes through this proxy (or another
+   * proxy on the same pool) from this thread sees the database as it was when
+   * the first one ran, whatever other threads commit meanwhile. Does not hold
+   * up writers. If this thread is already in a read or write transaction, the
+   * work simply becomes part of it.
+   *
+   * @param work the work to run
+   * @param <T>  the type of the work's result
+   * @return the result of the work
+   * @throws DBAccessException      if something goes wrong with the database
+   * @throws InvalidAccessException if the work throws it
+   * @throws InvalidActionException if the work throws it
+   */
+  public <T> T inReadTransaction(UnitOfWork<T> work)
+      throws DBAccessException, InvalidAccessException, InvalidActionException {
+    if (pool.isWriterHeldByCurrentThread() || pool.getPinnedReader() != null) {
+      return work.run();
+    }
+    CachedConnection conn = borrowReader();
+    Connection raw = conn.getConnection();
+    try {
+      raw.setAutoCommit(false);
+      pool.pinReader(conn);
+      try {
+        return work.run();
+      } finally {
+        pool.unpinReader();
+        // Nothing was written, so ending the transaction either way is the same
+        rollbackQuietly(raw);
+        restoreAutoCommit(raw);
+      }
+    } catch (SQLException e) {
+      throw new DBAccessException(e.getMessage());
+    } finally {
+      pool.releaseReader(conn);
+    }
+  }
+
+  /**
+   * Runs an action once the current thread's transaction commits, or right
+   * away if the thread is not in a transaction. If the transaction rolls back,
+   * the action is dropped.
+   *
+   * @param action the action to run
+   */
+  public void afterCommit(Runnable action) {
+    if (isInTransaction()) {
+      pool.addCommitAction(action);
     } else {
+      action.run();
+    }
+  }
+
+  /**
+   * @return whether the current thread is in a transaction (or writing) on
+   *         this proxy's pool, so its reads may see uncommitted changes
+   */
+  public boolean isInTransaction() {
+    return pool.isWriterHeldByCurrentThread();
+  }
+
+  /**
+   * @return the number of queries that reused a cached prepared statement
+   */
+  public long getStatementCacheHits() {
+    return pool.getStatementHits();
+  }
+
+  /**
+   * @return the number of queries that had to prepare a new statement
+   */
+  public long getStatementCacheMisses() {
+    return pool.getStatementMisses();
+  }
+
+  private CachedConnection borrowReader() throws DBAccessException {
+    if (!isConnected()) {
+      throw new DBAccessException("Database not connected.");
+    }
+    // Inside a transaction, read on the writer so uncommitted changes are seen
+    if (pool.isWriterHeldByCurrentThread()) {
+      return pool.acquireWriter();
+    }
+    // Inside a read transaction, read on its reader so every query sees the same state
+    CachedConnection pinned = pool.getPinnedReader();
+    if (pinned != null) {
+      return pinned;
+    }
+    return pool.borrowReader();
+  }
+
+  private CachedConnection acquireWriter() throws DBAccessException {
+    if (!isConnected()) {
       throw new DBAccessException("ERROR: Database not connected.");
     }
+    return pool.acquireWriter();
+  }
+
+  private static void rollbackQuietly(Connection raw) {
+    try {
+      raw.rollback();
+    } catch (SQLException e) {
+      System.err.println("Error rolling back transaction: " + e.getMessage());
+    }
+  }
+
+  private static void restoreAutoCommit(Connection raw) {
+    try {
+      raw.setAutoCommit(true);
+    } catch (SQLException e) {
+      System.err.println("Error ending transaction: " + e.getMessage());
+    }
+  }
+
+  private static PreparedStatement prepare(CachedConnection conn, String sqlCommand,
+      List<String> parameters) throws SQLException {
+    PreparedStatement prep = conn.prepare(sqlCommand);
+    for (int i = 0; i < parameters.size(); i++) {
+      prep.setString(i + 1, parameters.get(i));
+    }
+    return prep;
   }
 }
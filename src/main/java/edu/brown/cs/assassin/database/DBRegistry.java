@@ -0,0 +1,154 @@
+package edu.brown.cs.assassin.database;
+
+import static edu.brown.cs.assassin.main.AssassinConstants.GAME_DATA_PATH;
+import static edu.brown.cs.assassin.main.AssassinConstants.LOGIN_DATA_PATH;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+
+import edu.brown.cs.assassin.exception.DBAccessException;
+
+/**
+ * The one place that owns the application's database connections. Every
+ * database accessing class gets its DBProxy from here on each use, rather
+ * than keeping a connection of its own. Each database file gets one
+ * connection pool, opened the first time it is needed (the game database is
+ * migrated to the latest schema when it is opened).
+ *
+ * <p>
+ * The login database is attached to every game database connection as the
+ * schema LOGIN_SCHEMA, so game queries can join with users' names and emails,
+ * e.g. "player join login.login as account on account.id = player.user".
+ * Changes to users still go through the login database.
+ *
+ * <p>
+ * The registry starts out pointing at the main databases. Switching to other
+ * files (e.g. the test databases) is a single atomic swap: later calls see
+ * only the new databases, along with fresh row caches and a fresh code
+ * allocator. The old databases are then closed. A swap always starts afresh,
+ * even when switching to the files already in use.
+ */
+public final class DBRegistry {
+  /**
+   * The schema name the login database is attached as in the game database.
+   */
+  public static final String LOGIN_SCHEMA = "login";
+
+  private static final AtomicReference<Databases> CURRENT =
+      new AtomicReference<>(new Databases(LOGIN_DATA_PATH, GAME_DATA_PATH));
+
+  private DBRegistry() {
+  }
+
+  /**
+   * A pair of login and game databases, each opened when first used.
+   */
+  private static final class Databases {
+    private final String loginPath;
+    private final String gamePath;
+    private DBProxy loginDB;
+    private DBProxy gameDB;
+    private CodeAllocator codes;
+    private boolean closed;
+
+    Databases(String loginPath, String gamePath) {
+      this.loginPath = loginPath;
+      this.gamePath = gamePath;
+    }
+
+    synchronized DBProxy login() throws DBAccessException {
+      checkOpen();
+      if (loginDB == null) {
+        loginDB = new DBProxy(loginPath);
+      }
+      return loginDB;
+    }
+
+    synchronized DBProxy game() throws DBAccessException {
+      checkOpen();
+      if (gameDB == null) {
+        // Opening the login database first makes sure it is in WAL mode before
+        // it is attached
+        login();
+        ConnectionPool pool = new ConnectionPool(gamePath, ConnectionPool.DEFAULT_READERS,
+            Collections.singletonMap(LOGIN_SCHEMA, loginPath));
+        try {
+          SchemaMigrations.migrate(pool);
+        } catch (DBAccessException e) {
+          pool.close();
+          throw e;
+        }
+        gameDB = new DBProxy(pool);
+        codes = new CodeAllocator(gameDB);
+      }
+      return gameDB;
+    }
+
+    synchronized CodeAllocator codes() throws DBAccessException {
+      game();
+      return codes;
+    }
+
+    synchronized void close() {
+      closed = true;
+      if (loginDB != null) {
+        loginDB.disconnect();
+      }
+      if (gameDB != null) {
+        gameDB.disconnect();
+      }
+    }
+
+    private void checkOpen() throws DBAccessException {
+      if (closed) {
+        throw new DBAccessException("Database not connected.");
+      }
+    }
+  }
+
+  /**
+   * @return the login database currently in use
+   * @throws DBAccessException if the database cannot be opened
+   */
+  public static DBProxy getLoginDB() throws DBAccessException {
+    return CURRENT.get().login();
+  }
+
+  /**
+   * @return the game database currently in use
+   * @throws DBAccessException if the database cannot be opened or migrated
+   */
+  public static DBProxy getGameDB() throws DBAccessException {
+    return CURRENT.get().game();
+  }
+
+  /**
+   * @return the code allocator for the game database currently in use
+   * @throws DBAccessException if the database cannot be opened or migrated
+   */
+  public static CodeAllocator getCodeAllocator() throws DBAccessException {
+    return CURRENT.get().codes();
+  }
+
+  /**
+   * Switches every database accessing class to a different pair of database
+   * files, and closes the ones used until now. The new files are opened when
+   * they are first used.
+   *
+   * @param loginPath the path of the login database
+   * @param gamePath  the path of the game database
+   */
+  public static void use(String loginPath, String gamePath) {
+    CURRENT.getAndSet(new Databases(loginPath, gamePath)).close();
+  }
+
+  /**
+   * Closes the databases currently in use. Until use is called again, trying
+   * to access a database fails.
+   */
+  public static void close() {
+    Databases closed = new Databases(LOGIN_DATA_PATH, GAME_DATA_PATH);
+    closed.close();
+    CURRENT.getAndSet(closed).close();
+  }
+}
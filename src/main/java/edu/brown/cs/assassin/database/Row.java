@@ -0,0 +1,94 @@
+package edu.brown.cs.assassin.database;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * The current row of a query result, read with typed accessors. Columns are
+ * indexed from 0, in the order they are selected, to match the lists returned
+ * by DBProxy.executeQuery. A Row is only valid inside the RowMapper or
+ * RowHandler it is passed to.
+ */
+public final class Row {
+  private final ResultSet rs;
+
+  /**
+   * Wraps the cursor of a result set.
+   *
+   * @param rs the result set, positioned on a row
+   */
+  Row(ResultSet rs) {
+    this.rs = rs;
+  }
+
+  /**
+   * @param column the index of the column, from 0
+   * @return the value of the column as an int, or 0 if it is null
+   * @throws SQLException if the column cannot be read
+   */
+  public int getInt(int column) throws SQLException {
+    return rs.getInt(column + 1);
+  }
+
+  /**
+   * @param column the index of the column, from 0
+   * @return the value of the column as a long, or 0 if it is null
+   * @throws SQLException if the column cannot be read
+   */
+  public long getLong(int column) throws SQLException {
+    return rs.getLong(column + 1);
+  }
+
+  /**
+   * @param column the index of the column, from 0
+   * @return the value of the column as a String, or null if it is null
+   * @throws SQLException if the column cannot be read
+   */
+  public String getString(int column) throws SQLException {
+    return rs.getString(column + 1);
+  }
+
+  /**
+   * @param column the index of the column, from 0
+   * @return whether the column holds a nonzero number
+   * @throws SQLException if the column cannot be read
+   */
+  public boolean getBoolean(int column) throws SQLException {
+    return rs.getInt(column + 1) != 0;
+  }
+
+  /**
+   * @param column the index of the column, from 0
+   * @return the value of the column as whatever type the driver returns
+   * @throws SQLException if the column cannot be read
+   */
+  Object getObject(int column) throws SQLException {
+    return rs.getObject(column + 1);
+  }
+
+  /**
+   * @param column the index of the column, from 0
+   * @return the name of the column, or its alias if it was given one
+   * @throws SQLException if the result metadata cannot be read
+   */
+  String getColumnLabel(int column) throws SQLException {
+    return rs.getMetaData().getColumnLabel(column + 1);
+  }
+
+  /**
+   * @return the number of columns in the row
+   * @throws SQLException if the result metadata cannot be read
+   */
+  public int getColumnCount() throws SQLException {
+    return rs.getMetaData().getColumnCount();
+  }
+
+  /**
+   * @param column the index of the column, from 0
+   * @return whether the column is null
+   * @throws SQLException if the column cannot be read
+   */
+  public boolean isNull(int column) throws SQLException {
+    return rs.getObject(column + 1) == null;
+  }
+}
@@ -0,0 +1,115 @@
+package edu.brown.cs.assassin.database;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import edu.brown.cs.assassin.exception.DBAccessException;
+
+/**
+ * A read-through cache of rows looked up by ID, such as one entity class's
+ * table. The cache holds at most a fixed number of rows and evicts the least
+ * recently used ones first.
+ *
+ * <p>
+ * Every method that writes to a cached row must call invalidate (or
+ * invalidateAll for updates that can touch many rows) after its update. An
+ * invalidation inside a transaction is repeated once the transaction
+ * commits. Reads made while the current thread is writing can see
+ * uncommitted changes, so they are never added to the cache.
+ */
+public class RowCache {
+  public static final int DEFAULT_SIZE = 10000;
+
+  private final DBProxy db;
+  private final String query;
+  private final Cache<Integer, CachedRow> rows;
+  private final AtomicLong generation;
+
+  /**
+   * Creates an empty cache of the default size.
+   *
+   * @param db    the database the rows are read from
+   * @param query a query for a single row, with the ID as its one parameter
+   */
+  public RowCache(DBProxy db, String query) {
+    this(db, query, DEFAULT_SIZE);
+  }
+
+  /**
+   * Creates an empty cache.
+   *
+   * @param db      the database the rows are read from
+   * @param query   a query for a single row, with the ID as its one parameter
+   * @param maxRows the maximum number of rows to keep
+   */
+  public RowCache(DBProxy db, String query, int maxRows) {
+    this.db = db;
+    this.query = query;
+    rows = CacheBuilder.newBuilder().maximumSize(maxRows).recordStats().build();
+    generation = new AtomicLong();
+  }
+
+  /**
+   * Gets a row, from the cache if it is there and from the database if not.
+   *
+   * @param id the ID of the row
+   * @return the row, or null if there is no row with this ID
+   * @throws DBAccessException if something goes wrong with the database
+   */
+  public CachedRow get(int id) throws DBAccessException {
+    CachedRow row = rows.getIfPresent(id);
+    if (row != null) {
+      return row;
+    }
+    // If the row is invalidated while it is being read, the copy read may be
+    // stale, so it is only cached if nothing was invalidated in the meantime
+    long readGeneration = generation.get();
+    row = db.queryFirst(query, DBMethods.parameters(id), CachedRow::new);
+    if (row != null && !db.isInTransaction()) {
+      synchronized (this) {
+        if (generation.get() == readGeneration) {
+          rows.put(id, row);
+        }
+      }
+    }
+    return row;
+  }
+
+  /**
+   * Drops a row from the cache after it was changed or deleted.
+   *
+   * @param id the ID of the row
+   */
+  public void invalidate(int id) {
+    discard(id);
+    db.afterCommit(() -> discard(id));
+  }
+
+  /**
+   * Drops every row from the cache, for updates that change many rows.
+   */
+  public void invalidateAll() {
+    discardAll();
+    db.afterCommit(this::discardAll);
+  }
+
+  /**
+   * @return hit, miss and eviction counts of this cache
+   */
+  public CacheStats stats() {
+    return rows.stats();
+  }
+
+  private synchronized void discard(int id) {
+    generation.incrementAndGet();
+    rows.invalidate(id);
+  }
+
+  private synchronized void discardAll() {
+    generation.incrementAndGet();
+    rows.invalidateAll();
+  }
+}
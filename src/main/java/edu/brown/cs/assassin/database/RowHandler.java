@@ -0,0 +1,15 @@
+package edu.brown.cs.assassin.database;
+
+import java.sql.SQLException;
+
+/**
+ * Consumes the rows of a query result one at a time, as they are read.
+ */
+@FunctionalInterface
+public interface RowHandler {
+  /**
+   * @param row the current row
+   * @throws SQLException if a column cannot be read
+   */
+  void handle(Row row) throws SQLException;
+}
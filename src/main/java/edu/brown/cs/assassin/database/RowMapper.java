@@ -0,0 +1,18 @@
+package edu.brown.cs.assassin.database;
+
+import java.sql.SQLException;
+
+/**
+ * Converts one row of a query result into an object.
+ *
+ * @param <T> the type each row is converted to
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+  /**
+   * @param row the current row
+   * @return the object for this row
+   * @throws SQLException if a column cannot be read
+   */
+  T map(Row row) throws SQLException;
+}
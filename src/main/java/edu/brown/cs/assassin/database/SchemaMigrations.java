@@ -0,0 +1,119 @@
+package edu.brown.cs.assassin.database;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import edu.brown.cs.assassin.exception.DBAccessException;
+
+/**
+ * Brings the game database schema up to date. Each migration is a list of SQL
+ * statements, and a database's schema version is the number of migrations
+ * that have been applied to it. The version is kept in SQLite's user_version
+ * header field rather than in a table, so clearing every table (as the tests
+ * do) does not make the migrations run again. Migrations must only ever be
+ * appended to the list, never edited or reordered, once they have shipped.
+ */
+public final class SchemaMigrations {
+  private static final List<List<String>> MIGRATIONS = Collections.unmodifiableList(Arrays.asList(
+      // 1: Indexes for the lookups the game classes make on every page load and kill.
+      // team.join_code, game.join_code and player.kill_code already have unique indexes.
+      Arrays.asList(
+          "create index if not exists player_team_index on player (team, alive, id)",
+          "create index if not exists player_user_index on player (user, team)",
+          "create index if not exists target_killer_index on target (killer, target)",
+          "create index if not exists target_target_index on target (target, killer)",
+          "create index if not exists team_game_index on team (game, alive, id)",
+          "create index if not exists message_game_index on message (game, id)",
+          "create index if not exists message_field_message_index "
+              + "on message_field (message, field_index, content)",
+          "create index if not exists admin_game_index on admin (game, user)",
+          "create index if not exists admin_user_index on admin (user, game)"),
+      // 2: State of the CodeAllocator, a single row
+      Arrays.asList(
+          "create table if not exists code_allocator (id integer primary key check (id = 0), "
+              + "key0 integer not null, key1 integer not null, next_counter integer not null)"),
+      // 3: Emails waiting to be sent, written in the same transaction as the change that
+      // sends them. Recipients are separated by newlines; times are in epoch milliseconds.
+      Arrays.asList(
+          "create table if not exists outbox (id integer primary key autoincrement, "
+              + "recipients text not null, subject text not null, body text not null, "
+              + "created integer not null, attempts integer not null default 0, "
+              + "next_attempt integer not null default 0, sent integer, failed integer)",
+          "create index if not exists outbox_pending_index on outbox (next_attempt, id) "
+              + "where sent is null and failed is null"),
+      // 4: Whether an outbox email hides its recipients from each other, as email blasts do
+      Arrays.asList("alter table outbox add column bcc integer not null default 0"),
+      // 5: The game and MessageType of an outbox email that can be merged into a digest
+      Arrays.asList(
+          "alter table outbox add column game integer",
+          "alter table outbox add column kind text",
+          "create index if not exists outbox_digest_index on outbox (game, next_attempt) "
+              + "where sent is null and failed is null")));
+
+  private SchemaMigrations() {
+  }
+
+  /**
+   * @return the schema version a fully migrated database has
+   */
+  public static int latestVersion() {
+    return MIGRATIONS.size();
+  }
+
+  /**
+   * Applies every migration the database does not have yet, in order. Each
+   * migration runs in its own transaction together with the version bump, so
+   * a failed migration leaves the database at the previous version.
+   *
+   * @param pool the pool of connections to the game database
+   * @return the schema version of the database afterwards
+   * @throws DBAccessException if a migration fails or the database is newer
+   *                           than this code
+   */
+  public static int migrate(ConnectionPool pool) throws DBAccessException {
+    CachedConnection writer = pool.acquireWriter();
+    Connection conn = writer.getConnection();
+    try (Statement stat = conn.createStatement()) {
+      int version = readVersion(stat);
+      if (version > latestVersion()) {
+        throw new DBAccessException(String.format(
+            "Database %s has schema version %d, but the latest known version is %d.",
+            pool.getFilename(), version, latestVersion()));
+      }
+      while (version < latestVersion()) {
+        conn.setAutoCommit(false);
+        try {
+          for (String sql : MIGRATIONS.get(version)) {
+            stat.executeUpdate(sql);
+          }
+          version++;
+          // PRAGMA arguments cannot be bound as parameters
+          stat.executeUpdate("pragma user_version = " + version);
+          conn.commit();
+        } catch (SQLException e) {
+          conn.rollback();
+          throw e;
+        } finally {
+          conn.setAutoCommit(true);
+        }
+      }
+      return version;
+    } catch (SQLException e) {
+      throw new DBAccessException("Error migrating database: " + e.getMessage());
+    } finally {
+      pool.releaseWriter();
+    }
+  }
+
+  private static int readVersion(Statement stat) throws SQLException {
+    try (ResultSet rs = stat.executeQuery("pragma user_version")) {
+      rs.next();
+      return rs.getInt(1);
+    }
+  }
+}
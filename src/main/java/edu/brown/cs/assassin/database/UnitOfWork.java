@@ -0,0 +1,22 @@
+package edu.brown.cs.assassin.database;
+
+import edu.brown.cs.assassin.exception.DBAccessException;
+import edu.brown.cs.assassin.exception.InvalidAccessException;
+import edu.brown.cs.assassin.exception.InvalidActionException;
+
+/**
+ * A piece of work that runs inside a database transaction.
+ *
+ * @param <T> the type of the work's result
+ * @see DBProxy#inTransaction(UnitOfWork)
+ */
+@FunctionalInterface
+public interface UnitOfWork<T> {
+  /**
+   * @return the result of the work
+   * @throws DBAccessException      if something goes wrong with the database
+   * @throws InvalidAccessException if the work reads an invalid ID
+   * @throws InvalidActionException if the work cannot be done
+   */
+  T run() throws DBAccessException, InvalidAccessException, InvalidActionException;
+}
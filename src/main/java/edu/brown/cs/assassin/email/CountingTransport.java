@@ -0,0 +1,43 @@
+package edu.brown.cs.assassin.email;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Drops emails, only counting them and remembering the last one, so the game
+ * can be measured without any mail being sent or written.
+ */
+public final class CountingTransport implements MailTransport {
+  private final AtomicLong emails = new AtomicLong();
+  private final AtomicLong recipients = new AtomicLong();
+  private final AtomicReference<Email> last = new AtomicReference<>();
+
+  @Override
+  public boolean send(Email email) {
+    emails.incrementAndGet();
+    recipients.addAndGet(email.getRecipients().size());
+    last.set(email);
+    return true;
+  }
+
+  /**
+   * @return the number of emails sent
+   */
+  public long getEmailCount() {
+    return emails.get();
+  }
+
+  /**
+   * @return the number of recipients of all emails sent
+   */
+  public long getRecipientCount() {
+    return recipients.get();
+  }
+
+  /**
+   * @return the last email sent, or null if none has been
+   */
+  public Email getLast() {
+    return last.get();
+  }
+}
@@ -0,0 +1,134 @@
+package edu.brown.cs.assassin.email;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Merges game notifications claimed together from the Outbox into digests. A
+ * notification is an outbox email with a game and a kind (the name of the
+ * MessageType that caused it); emails without one are sent as they are.
+ *
+ * <p>
+ * Each recipient gets one email for all the notifications of a game they were
+ * sent. Notifications of the same kind with the same subject and text appear
+ * in it once. Recipients whose digests are the same share an email, in chunks
+ * of at most chunkSize if the recipients are hidden from each other.
+ */
+final class Digests {
+
+  private Digests() {
+  }
+
+  /**
+   * An email to send, and the outbox emails it is made from.
+   */
+  static final class Digest {
+    private final Email email;
+    private final List<Integer> ids;
+
+    Digest(Email email, List<Integer> ids) {
+      this.email = email;
+      this.ids = ids;
+    }
+
+    Email getEmail() {
+      return email;
+    }
+
+    List<Integer> getIDs() {
+      return ids;
+    }
+  }
+
+  /**
+   * Merges outbox emails into digests.
+   *
+   * @param entries   the outbox emails, oldest first
+   * @param chunkSize the maximum number of hidden recipients of one email
+   * @return the emails to send. Every outbox email is part of at least one,
+   *         and of more than one if its recipients get different digests.
+   */
+  static List<Digest> merge(List<Outbox.Entry> entries, int chunkSize) {
+    List<Digest> digests = new ArrayList<>();
+    Map<Integer, List<Outbox.Entry>> byGame = new LinkedHashMap<>();
+    for (Outbox.Entry entry : entries) {
+      if (entry.getKind() == null) {
+        digests.add(new Digest(entry.getEmail(), Collections.singletonList(entry.getID())));
+      } else {
+        byGame.computeIfAbsent(entry.getGame(), game -> new ArrayList<>()).add(entry);
+      }
+    }
+    for (List<Outbox.Entry> game : byGame.values()) {
+      if (game.size() == 1) {
+        Outbox.Entry entry = game.get(0);
+        digests.add(new Digest(entry.getEmail(), Collections.singletonList(entry.getID())));
+      } else {
+        mergeGame(game, chunkSize, digests);
+      }
+    }
+    return digests;
+  }
+
+  private static void mergeGame(List<Outbox.Entry> entries, int chunkSize,
+      List<Digest> digests) {
+    // The notifications each recipient was sent, then the recipients sent each set
+    Map<String, List<Outbox.Entry>> byRecipient = new LinkedHashMap<>();
+    for (Outbox.Entry entry : entries) {
+      for (String recipient : entry.getEmail().getRecipients()) {
+        List<Outbox.Entry> sent = byRecipient.computeIfAbsent(recipient, r -> new ArrayList<>());
+        if (!sent.contains(entry)) {
+          sent.add(entry);
+        }
+      }
+    }
+    Map<List<Outbox.Entry>, List<String>> byDigest = new LinkedHashMap<>();
+    for (Map.Entry<String, List<Outbox.Entry>> recipient : byRecipient.entrySet()) {
+      byDigest.computeIfAbsent(recipient.getValue(), d -> new ArrayList<>())
+          .add(recipient.getKey());
+    }
+
+    for (Map.Entry<List<Outbox.Entry>, List<String>> digest : byDigest.entrySet()) {
+      List<Outbox.Entry> parts = digest.getKey();
+      List<String> recipients = digest.getValue();
+      List<Integer> ids = new ArrayList<>();
+      // Sections by kind, subject and text, in the order they were sent
+      Set<List<String>> sections = new LinkedHashSet<>();
+      boolean bcc = false;
+      for (Outbox.Entry part : parts) {
+        ids.add(part.getID());
+        Email email = part.getEmail();
+        sections.add(Arrays.asList(part.getKind(), email.getSubject(), email.getText()));
+        bcc |= email.isBcc();
+      }
+      String subject;
+      String text;
+      if (sections.size() == 1) {
+        subject = parts.get(0).getEmail().getSubject();
+        text = parts.get(0).getEmail().getText();
+      } else {
+        List<String> first = sections.iterator().next();
+        subject = String.format("%s (and %d more updates)", first.get(1), sections.size() - 1);
+        StringBuilder body = new StringBuilder();
+        for (List<String> section : sections) {
+          if (body.length() > 0) {
+            body.append("<hr>");
+          }
+          body.append("<h3>").append(section.get(1)).append("</h3>").append(section.get(2));
+        }
+        text = body.toString();
+      }
+      int size = bcc ? chunkSize : recipients.size();
+      for (int start = 0; start < recipients.size(); start += size) {
+        List<String> chunk = recipients.subList(start, Math.min(start + size,
+            recipients.size()));
+        digests.add(new Digest(new Email(chunk, subject, text, bcc), ids));
+      }
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package edu.brown.cs.assassin.email;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An email to be sent from the Assassin game's account. The recipients are
+ * either listed openly in the To header, or hidden from each other as Bcc
+ * recipients (e.g. for a blast to a whole game).
+ */
+public final class Email {
+  private final List<String> recipients;
+  private final String subject;
+  private final String text;
+  private final boolean bcc;
+
+  /**
+   * @param recipients the people to receive the email
+   * @param subject    the subject of the email
+   * @param text       the body of the email, which can be formatted like html
+   * @param bcc        whether to hide the recipients from each other
+   */
+  public Email(List<String> recipients, String subject, String text, boolean bcc) {
+    this.recipients = Collections.unmodifiableList(new ArrayList<>(recipients));
+    this.subject = subject;
+    this.text = text;
+    this.bcc = bcc;
+  }
+
+  /**
+   * @return the people to receive the email
+   */
+  public List<String> getRecipients() {
+    return recipients;
+  }
+
+  /**
+   * @return the subject of the email
+   */
+  public String getSubject() {
+    return subject;
+  }
+
+  /**
+   * @return the body of the email
+   */
+  public String getText() {
+    return text;
+  }
+
+  /**
+   * @return whether the recipients are hidden from each other
+   */
+  public boolean isBcc() {
+    return bcc;
+  }
+}
@@ -0,0 +1,266 @@
+package edu.brown.cs.assassin.email;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A bounded queue of emails sent in the background by a pool of worker
+ * threads, so that requests which send email do not wait for the mail server.
+ *
+ * <p>
+ * An email that fails to send is tried again after a delay that doubles with
+ * every attempt, up to a maximum number of attempts. When the queue is full,
+ * new emails are refused rather than making the caller wait. The queue keeps
+ * counts of the emails sent, retried, failed and refused, and of the time from
+ * queueing an email to sending it. A caller that needs to know what became of
+ * an email can pass a callback, which is told whether it was sent.
+ */
+public final class EmailQueue {
+
+  /**
+   * Sends one email, e.g. EmailSender::send.
+   */
+  @FunctionalInterface
+  public interface Delivery {
+    /**
+     * @param email the email to send
+     * @return whether the email was sent
+     */
+    boolean deliver(Email email);
+  }
+
+  private final Delivery delivery;
+  private final int maxAttempts;
+  private final long retryMillis;
+  private final ThreadPoolExecutor workers;
+  private final ScheduledExecutorService retries;
+
+  private final AtomicLong sent = new AtomicLong();
+  private final AtomicLong retried = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong refused = new AtomicLong();
+  private final AtomicLong totalLatencyNanos = new AtomicLong();
+  private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+  /**
+   * Creates a queue and its worker threads.
+   *
+   * @param capacity    the maximum number of emails waiting to be sent
+   * @param workers     the number of emails sent at once
+   * @param maxAttempts the number of times to try sending an email
+   * @param retryMillis the delay before trying an email the second time
+   * @param delivery    how to send an email
+   */
+  public EmailQueue(int capacity, int workers, int maxAttempts, long retryMillis,
+      Delivery delivery) {
+    if (capacity < 1 || workers < 1 || maxAttempts < 1 || retryMillis < 0) {
+      throw new IllegalArgumentException("Invalid email queue configuration.");
+    }
+    this.delivery = delivery;
+    this.maxAttempts = maxAttempts;
+    this.retryMillis = retryMillis;
+    this.workers = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(capacity), daemonThreads("email-worker"));
+    this.retries = Executors.newSingleThreadScheduledExecutor(daemonThreads("email-retry"));
+  }
+
+  private static ThreadFactory daemonThreads(String name) {
+    AtomicInteger count = new AtomicInteger();
+    return r -> {
+      Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  /**
+   * Queues an email to be sent.
+   *
+   * @param recipients the people to receive the email
+   * @param subject    the subject of the email
+   * @param text       the body of the email, which can be formatted like html
+   * @return whether the email was queued; false if the queue is full or shut
+   *         down
+   */
+  public boolean enqueue(List<String> recipients, String subject, String text) {
+    return enqueue(new Email(recipients, subject, text, false), sent -> {
+    });
+  }
+
+  /**
+   * Queues an email to be sent, and calls back once it has been sent or given
+   * up on. The callback runs on one of the queue's threads, and is not called
+   * if the email is not queued.
+   *
+   * @param email the email
+   * @param done  told whether the email was sent
+   * @return whether the email was queued; false if the queue is full or shut
+   *         down
+   */
+  public boolean enqueue(Email email, Consumer<Boolean> done) {
+    return enqueue(email, maxAttempts, done);
+  }
+
+  /**
+   * Queues an email to be sent, tried at most a given number of times, e.g.
+   * once when the caller has its own way of trying again.
+   *
+   * @param email    the email
+   * @param attempts the number of times to try sending the email
+   * @param done     told whether the email was sent
+   * @return whether the email was queued; false if the queue is full or shut
+   *         down
+   */
+  public boolean enqueue(Email email, int attempts, Consumer<Boolean> done) {
+    if (attempts < 1) {
+      throw new IllegalArgumentException("An email must be tried at least once.");
+    }
+    if (submit(new Job(email, attempts, done))) {
+      return true;
+    }
+    refused.incrementAndGet();
+    return false;
+  }
+
+  /**
+   * An email waiting to be sent.
+   */
+  private static final class Job {
+    private final Email email;
+    private final int maxAttempts;
+    private final Consumer<Boolean> done;
+    private final long queued = System.nanoTime();
+    private int attempts;
+
+    Job(Email email, int maxAttempts, Consumer<Boolean> done) {
+      this.email = email;
+      this.maxAttempts = maxAttempts;
+      this.done = done;
+    }
+  }
+
+  private boolean submit(Job job) {
+    try {
+      workers.execute(() -> attempt(job));
+      return true;
+    } catch (RejectedExecutionException e) {
+      return false;
+    }
+  }
+
+  private void attempt(Job job) {
+    job.attempts++;
+    boolean delivered;
+    try {
+      delivered = delivery.deliver(job.email);
+    } catch (RuntimeException e) {
+      delivered = false;
+    }
+    if (delivered) {
+      long latency = System.nanoTime() - job.queued;
+      sent.incrementAndGet();
+      totalLatencyNanos.addAndGet(latency);
+      maxLatencyNanos.accumulateAndGet(latency, Math::max);
+      job.done.accept(true);
+    } else if (job.attempts < job.maxAttempts) {
+      retried.incrementAndGet();
+      long delay = retryMillis << Math.min(job.attempts - 1, Long.SIZE - 2);
+      try {
+        retries.schedule(() -> {
+          if (!submit(job)) {
+            giveUp(job);
+          }
+        }, delay, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        giveUp(job);
+      }
+    } else {
+      giveUp(job);
+    }
+  }
+
+  private void giveUp(Job job) {
+    failed.incrementAndGet();
+    job.done.accept(false);
+  }
+
+  /**
+   * @return the number of emails waiting for a worker, not counting those
+   *         waiting to be retried
+   */
+  public int getQueueDepth() {
+    return workers.getQueue().size();
+  }
+
+  /**
+   * @return the number of emails sent
+   */
+  public long getSentCount() {
+    return sent.get();
+  }
+
+  /**
+   * @return the number of failed attempts that were tried again
+   */
+  public long getRetryCount() {
+    return retried.get();
+  }
+
+  /**
+   * @return the number of emails given up on after failing
+   */
+  public long getFailedCount() {
+    return failed.get();
+  }
+
+  /**
+   * @return the number of emails refused because the queue was full
+   */
+  public long getRefusedCount() {
+    return refused.get();
+  }
+
+  /**
+   * @return the average time from queueing an email to sending it, in
+   *         milliseconds, or 0 if none have been sent
+   */
+  public double getAverageLatencyMillis() {
+    long count = sent.get();
+    return count == 0 ? 0 : totalLatencyNanos.get() / (count * 1e6);
+  }
+
+  /**
+   * @return the longest time from queueing an email to sending it, in
+   *         milliseconds
+   */
+  public double getMaxLatencyMillis() {
+    return maxLatencyNanos.get() / 1e6;
+  }
+
+  /**
+   * Stops taking emails, and waits for the ones already queued to be tried
+   * once. Emails waiting to be retried are dropped.
+   *
+   * @param timeoutMillis how long to wait
+   * @return whether every queued email was tried in time
+   */
+  public boolean shutdown(long timeoutMillis) {
+    retries.shutdownNow();
+    workers.shutdown();
+    try {
+      return workers.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+}
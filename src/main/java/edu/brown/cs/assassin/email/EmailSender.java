@@ -1,27 +1,77 @@
 package edu.brown.cs.assassin.email;
 
 import java.util.List;
-import java.util.Properties;
 
 import javax.mail.Message;
 import javax.mail.MessagingException;
 import javax.mail.Session;
-import javax.mail.Transport;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
 
-import edu.brown.cs.assassin.login.Login;
 import edu.brown.cs.assassin.main.AssassinConstants;
 
 /**
  * EmailSender class used to send emails from the login associated with the
- * Assassin game.
+ * Assassin game. Emails can be sent right away with send, or queued with
+ * sendLater to be sent in the background. Either way, they go through a
+ * MailTransport: over SMTP unless configured otherwise (see
+ * MailTransport.fromConfiguration), which is opened when the first email is
+ * sent.
  */
 public final class EmailSender {
+  private static final EmailQueue QUEUE = new EmailQueue(
+      AssassinConstants.EMAIL_QUEUE_CAPACITY, AssassinConstants.EMAIL_WORKERS,
+      AssassinConstants.EMAIL_MAX_ATTEMPTS, AssassinConstants.EMAIL_RETRY_MILLIS,
+      EmailSender::send);
+  private static MailTransport transport;
 
   private EmailSender() {
   }
 
+  /**
+   * @return the transport emails are sent through
+   */
+  public static synchronized MailTransport getTransport() {
+    if (transport == null) {
+      transport = MailTransport.fromConfiguration();
+    }
+    return transport;
+  }
+
+  /**
+   * Sends all emails through a different transport from now on, e.g. a
+   * CountingTransport for a load test. The previous transport is closed.
+   *
+   * @param newTransport the transport to use
+   */
+  public static synchronized void setTransport(MailTransport newTransport) {
+    if (transport != null) {
+      transport.close();
+    }
+    transport = newTransport;
+  }
+
+  /**
+   * Queues an email to recipients to be sent in the background, retrying if
+   * sending fails.
+   *
+   * @param recipients a list of people to receive the email.
+   * @param subject    the subject of the email.
+   * @param text       the body of the email.
+   * @return whether the email was queued; false if too many emails are
+   *         waiting to be sent.
+   */
+  public static boolean sendLater(List<String> recipients, String subject, String text) {
+    return QUEUE.enqueue(recipients, subject, text);
+  }
+
+  /**
+   * @return the queue used by sendLater, e.g. for its counts
+   */
+  public static EmailQueue getQueue() {
+    return QUEUE;
+  }
+
   /**
    * Sends an email to recipients with the specified subject and text in the
    * email.
@@ -32,36 +82,45 @@ public final class EmailSender {
    * @return whether the email was sent successfully.
    */
   public static boolean send(List<String> recipients, String subject, String text) {
+    return send(new Email(recipients, subject, text, false));
+  }
 
-    String host = "smtp.gmail.com";
-
-    // Get the session object
-    Properties properties = System.getProperties();
-    properties.setProperty("mail.smtp.host", host);
-    properties.setProperty("mail.smtp.starttls.enable", "true");
-    properties.setProperty("mail.smtp.port", "587");
-
-    Session session = Session.getDefaultInstance(properties);
-
-    // compose the message
-    try {
-      MimeMessage message = new MimeMessage(session);
-      message.setFrom(new InternetAddress(AssassinConstants.USERNAME));
-
-      for (String to : recipients) {
-        message.addRecipient(Message.RecipientType.TO, new InternetAddress(to));
-      }
-      message.setSubject(subject);
-      // Can format message with html
-      message.setContent(text, "text/html");
+  /**
+   * Sends an email through the transport.
+   *
+   * @param email the email
+   * @return whether the email was sent successfully.
+   */
+  public static boolean send(Email email) {
+    return getTransport().send(email);
+  }
 
-      // Send message
-      Transport.send(message, AssassinConstants.USERNAME,
-          Login.decrypt(AssassinConstants.PASSWORD, AssassinConstants.KEY));
-      return true;
+  /**
+   * Composes the message for an email. An email with hidden recipients is
+   * addressed to the game's own account, with the recipients as Bcc.
+   *
+   * @param email   the email
+   * @param session the session of the transport that will send the message
+   * @return the message, ready to send
+   * @throws MessagingException if an address is invalid
+   */
+  static MimeMessage toMessage(Email email, Session session) throws MessagingException {
+    MimeMessage message = new MimeMessage(session);
+    InternetAddress from = new InternetAddress(AssassinConstants.USERNAME);
+    message.setFrom(from);
 
-    } catch (MessagingException mex) {
-      return false;
+    if (email.isBcc()) {
+      message.addRecipient(Message.RecipientType.TO, from);
+    }
+    Message.RecipientType type =
+        email.isBcc() ? Message.RecipientType.BCC : Message.RecipientType.TO;
+    for (String to : email.getRecipients()) {
+      message.addRecipient(type, new InternetAddress(to));
     }
+    message.setSubject(email.getSubject());
+    // Can format message with html
+    message.setContent(email.getText(), "text/html");
+    message.saveChanges();
+    return message;
   }
 }
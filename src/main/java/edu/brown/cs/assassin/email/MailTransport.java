@@ -0,0 +1,64 @@
+package edu.brown.cs.assassin.email;
+
+import java.nio.file.Paths;
+
+import edu.brown.cs.assassin.main.AssassinConstants;
+
+/**
+ * Where EmailSender's emails go. The real one sends them over SMTP; the others
+ * let the game run at full speed without a mail server, e.g. for load tests.
+ * Implementations must be safe to use from several threads at once.
+ */
+public interface MailTransport {
+  /**
+   * Name of the SMTP transport in the configuration.
+   */
+  String SMTP = "smtp";
+  /**
+   * Name of the mbox file transport in the configuration.
+   */
+  String MBOX = "mbox";
+  /**
+   * Name of the counting transport in the configuration.
+   */
+  String COUNT = "count";
+
+  /**
+   * Sends an email.
+   *
+   * @param email the email
+   * @return whether the email was sent
+   */
+  boolean send(Email email);
+
+  /**
+   * Releases anything the transport holds open.
+   */
+  default void close() {
+  }
+
+  /**
+   * Creates the transport named by the system property MAIL_TRANSPORT_PROPERTY,
+   * or MAIL_TRANSPORT if it is not set: SMTP for smtp, MboxTransport for mbox
+   * (writing to the file in MAIL_MBOX_PROPERTY, or MAIL_MBOX_PATH) and
+   * CountingTransport for count.
+   *
+   * @return the configured transport
+   * @throws IllegalArgumentException if the configured name is unknown
+   */
+  static MailTransport fromConfiguration() {
+    String name = System.getProperty(AssassinConstants.MAIL_TRANSPORT_PROPERTY,
+        AssassinConstants.MAIL_TRANSPORT);
+    switch (name) {
+      case SMTP:
+        return new SmtpTransport();
+      case MBOX:
+        return new MboxTransport(Paths.get(System.getProperty(
+            AssassinConstants.MAIL_MBOX_PROPERTY, AssassinConstants.MAIL_MBOX_PATH)));
+      case COUNT:
+        return new CountingTransport();
+      default:
+        throw new IllegalArgumentException("Unknown mail transport " + name);
+    }
+  }
+}
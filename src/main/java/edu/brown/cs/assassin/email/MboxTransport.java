@@ -0,0 +1,71 @@
+package edu.brown.cs.assassin.email;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Properties;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+
+import edu.brown.cs.assassin.main.AssassinConstants;
+
+/**
+ * Appends emails to a file in mbox format instead of sending them, so what
+ * would have been sent can be read with any mail client. Each email is
+ * written as the full message, Bcc header included.
+ */
+public final class MboxTransport implements MailTransport {
+  private static final DateTimeFormatter FROM_LINE_DATE =
+      DateTimeFormatter.ofPattern("EEE MMM d HH:mm:ss yyyy", Locale.ROOT);
+
+  private final Path file;
+  private final Session session = Session.getInstance(new Properties());
+
+  /**
+   * @param file the mbox file, created if it does not exist
+   */
+  public MboxTransport(Path file) {
+    this.file = file;
+  }
+
+  @Override
+  public boolean send(Email email) {
+    String message;
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      EmailSender.toMessage(email, session).writeTo(bytes);
+      message = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    } catch (MessagingException | IOException e) {
+      return false;
+    }
+    StringBuilder entry = new StringBuilder("From ").append(AssassinConstants.USERNAME)
+        .append(' ').append(FROM_LINE_DATE.format(ZonedDateTime.now(ZoneOffset.UTC)))
+        .append('\n');
+    for (String line : message.split("\r?\n", -1)) {
+      // Lines that look like the start of a message are quoted
+      if (line.matches(">*From .*")) {
+        entry.append('>');
+      }
+      entry.append(line).append('\n');
+    }
+    entry.append('\n');
+    synchronized (this) {
+      try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+          StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+        out.write(entry.toString());
+        return true;
+      } catch (IOException e) {
+        return false;
+      }
+    }
+  }
+}
@@ -0,0 +1,319 @@
+package edu.brown.cs.assassin.email;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import edu.brown.cs.assassin.database.DBMethods;
+import edu.brown.cs.assassin.database.DBProxy;
+import edu.brown.cs.assassin.database.DBRegistry;
+import edu.brown.cs.assassin.database.Row;
+import edu.brown.cs.assassin.exception.DBAccessException;
+import edu.brown.cs.assassin.exception.InvalidAccessException;
+import edu.brown.cs.assassin.exception.InvalidActionException;
+import edu.brown.cs.assassin.main.AssassinConstants;
+
+/**
+ * The outbox table of the game database, which holds emails until they are
+ * sent. An email is added in the same transaction as the change that sends it,
+ * so it is sent if and only if the change commits, even if the server stops
+ * before it goes out. The OutboxDispatcher sends the emails.
+ *
+ * <p>
+ * A dispatcher claims a batch of emails by moving their next attempt past the
+ * time it expects to be done with them. If the server stops first, the emails
+ * are claimed again once that time passes.
+ *
+ * <p>
+ * A bulk email is split into chunks of at most EMAIL_CHUNK_SIZE hidden
+ * recipients, each its own row. The chunks are sent in parallel and succeed
+ * or fail on their own, so one bad address or a provider's limit on
+ * recipients per message only affects one chunk.
+ *
+ * <p>
+ * A game notification (an email with a game and a kind) only becomes due
+ * DIGEST_WINDOW_MILLIS after it is added. One added while another of the same
+ * game is waiting becomes due at the same time. A game's due notifications are
+ * always claimed together, however many there are, and merged into Digests.
+ */
+public final class Outbox {
+  private static final String RECIPIENT_SEPARATOR = "\n";
+  private static final String INSERT = "insert into outbox (recipients, subject, body, "
+      + "created, bcc, game, kind, next_attempt) values (?, ?, ?, ?, ?, ?, ?, ?)";
+
+  private Outbox() {
+  }
+
+  /**
+   * An email read from the outbox.
+   */
+  static final class Entry {
+    private final int id;
+    private final Email email;
+    private final Integer game;
+    private final String kind;
+
+    Entry(int id, Email email, Integer game, String kind) {
+      this.id = id;
+      this.email = email;
+      this.game = game;
+      this.kind = kind;
+    }
+
+    int getID() {
+      return id;
+    }
+
+    Email getEmail() {
+      return email;
+    }
+
+    /**
+     * @return the game of a notification, or null for other emails
+     */
+    Integer getGame() {
+      return game;
+    }
+
+    /**
+     * @return the kind of a notification, or null for other emails
+     */
+    String getKind() {
+      return kind;
+    }
+  }
+
+  private static DBProxy db() throws DBAccessException {
+    return DBRegistry.getGameDB();
+  }
+
+  /**
+   * Adds an email to the outbox, as part of the current transaction if there
+   * is one. A running dispatcher is woken once the email is committed.
+   *
+   * @param recipients the people to receive the email
+   * @param subject    the subject of the email
+   * @param text       the body of the email, which can be formatted like html
+   * @throws DBAccessException if something goes wrong with the database
+   */
+  public static void add(List<String> recipients, String subject, String text)
+      throws DBAccessException {
+    add(recipients, subject, text, null, null);
+  }
+
+  /**
+   * Adds a game notification to the outbox, as part of the current
+   * transaction if there is one. It is sent after DIGEST_WINDOW_MILLIS, merged
+   * with the game's other notifications in the meantime.
+   *
+   * @param recipients the people to receive the email
+   * @param subject    the subject of the email
+   * @param text       the body of the email, which can be formatted like html
+   * @param game       ID of the game, or null if the email is not a
+   *                   notification
+   * @param kind       what happened, e.g. the name of a MessageType, or null
+   *                   if the email is not a notification
+   * @throws DBAccessException if something goes wrong with the database
+   */
+  public static void add(List<String> recipients, String subject, String text, Integer game,
+      String kind) throws DBAccessException {
+    if (recipients.isEmpty()) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    db().updateDatabase(INSERT, row(String.join(RECIPIENT_SEPARATOR, recipients), subject,
+        text, now, false, game, kind));
+    db().afterCommit(OutboxDispatcher::wakeRunning);
+  }
+
+  /**
+   * Adds an email to many recipients to the outbox, as part of the current
+   * transaction if there is one. Duplicate recipients are dropped, and the
+   * rest are split into chunks of at most EMAIL_CHUNK_SIZE, each sent as its
+   * own email with the recipients hidden from each other.
+   *
+   * @param recipients the people to receive the email
+   * @param subject    the subject of the email
+   * @param text       the body of the email, which can be formatted like html
+   * @return the number of chunks
+   * @throws DBAccessException if something goes wrong with the database
+   */
+  public static int addBulk(List<String> recipients, String subject, String text)
+      throws DBAccessException {
+    return addBulk(recipients, subject, text, null, null);
+  }
+
+  /**
+   * Adds a game notification to many recipients to the outbox, chunked like
+   * addBulk and merged into digests like add.
+   *
+   * @param recipients the people to receive the email
+   * @param subject    the subject of the email
+   * @param text       the body of the email, which can be formatted like html
+   * @param game       ID of the game, or null if the email is not a
+   *                   notification
+   * @param kind       what happened, e.g. the name of a MessageType, or null
+   *                   if the email is not a notification
+   * @return the number of chunks
+   * @throws DBAccessException if something goes wrong with the database
+   */
+  public static int addBulk(List<String> recipients, String subject, String text,
+      Integer game, String kind) throws DBAccessException {
+    List<String> unique = new ArrayList<>(new LinkedHashSet<>(recipients));
+    long now = System.currentTimeMillis();
+    List<List<String>> chunks = new ArrayList<>();
+    for (int start = 0; start < unique.size(); start += AssassinConstants.EMAIL_CHUNK_SIZE) {
+      List<String> chunk = unique.subList(start,
+          Math.min(start + AssassinConstants.EMAIL_CHUNK_SIZE, unique.size()));
+      chunks.add(row(String.join(RECIPIENT_SEPARATOR, chunk), subject, text, now, true, game,
+          kind));
+    }
+    db().updateBatch(INSERT, chunks);
+    db().afterCommit(OutboxDispatcher::wakeRunning);
+    return chunks.size();
+  }
+
+  /**
+   * @return the parameters of INSERT for an email. A notification is due when
+   *         the game's waiting notifications are, or after the digest window
+   *         if there are none.
+   */
+  private static List<String> row(String recipients, String subject, String text, long now,
+      boolean bcc, Integer game, String kind) throws DBAccessException {
+    long due = 0;
+    if (game != null && kind != null) {
+      String waiting = db().queryFirst("select max(next_attempt) from outbox "
+          + "where game = ? and kind is not null and sent is null and failed is null "
+          + "and attempts = 0 and next_attempt > ? and next_attempt <= ?",
+          DBMethods.parameters(game, now, now + AssassinConstants.DIGEST_WINDOW_MILLIS),
+          r -> r.getString(0));
+      due = waiting == null ? now + AssassinConstants.DIGEST_WINDOW_MILLIS
+          : Long.parseLong(waiting);
+    }
+    // Game and kind may be null, which DBMethods.parameters does not allow
+    return Arrays.asList(recipients, subject, text, Long.toString(now), bcc ? "1" : "0",
+        game == null ? null : game.toString(), kind, Long.toString(due));
+  }
+
+  /**
+   * @return the number of emails neither sent nor given up on
+   * @throws DBAccessException if something goes wrong with the database
+   */
+  public static int getPendingCount() throws DBAccessException {
+    return db().queryFirst("select count(*) from outbox where sent is null and failed is null",
+        DBMethods.parameters(), row -> row.getInt(0));
+  }
+
+  /**
+   * Claims the oldest emails that are due, so that they are not claimed again
+   * until the lease ends. If the oldest is a game notification, claims all of
+   * that game's due notifications, even if there are more than count, so that
+   * they can be merged. Otherwise claims the oldest due emails that are not
+   * notifications.
+   *
+   * @param db       the game database
+   * @param count    the maximum number of emails to claim, unless they are
+   *                 notifications
+   * @param now      the current time
+   * @param leaseEnd when to claim the emails again if they are not marked as
+   *                 sent or failed by then
+   * @return the claimed emails, oldest first
+   * @throws DBAccessException if something goes wrong with the database
+   */
+  static List<Entry> claim(DBProxy db, int count, long now, long leaseEnd)
+      throws DBAccessException {
+    String columns = "select id, recipients, subject, body, bcc, game, kind from outbox "
+        + "where sent is null and failed is null and next_attempt <= ? ";
+    try {
+      return db.inTransaction(() -> {
+        Integer game = db.queryFirst("select case when kind is null then null else game end "
+            + "from outbox where sent is null and failed is null and next_attempt <= ? "
+            + "order by next_attempt, id limit 1", DBMethods.parameters(now),
+            row -> row.getString(0) == null ? null : row.getInt(0));
+        List<Entry> entries;
+        if (game == null) {
+          entries = db.query(columns + "and kind is null order by next_attempt, id limit ?",
+              DBMethods.parameters(now, count), Outbox::toEntry);
+        } else {
+          entries = db.query(columns + "and game = ? and kind is not null "
+              + "order by next_attempt, id", DBMethods.parameters(now, game), Outbox::toEntry);
+        }
+        List<List<String>> leases = new ArrayList<>();
+        for (Entry entry : entries) {
+          leases.add(DBMethods.parameters(leaseEnd, entry.getID()));
+        }
+        db.updateBatch("update outbox set next_attempt = ? where id = ?", leases);
+        return entries;
+      });
+    } catch (InvalidAccessException | InvalidActionException e) {
+      // The work above throws neither
+      throw new DBAccessException(e.getMessage());
+    }
+  }
+
+  private static Entry toEntry(Row row) throws SQLException {
+    return new Entry(row.getInt(0), new Email(
+        Arrays.asList(row.getString(1).split(RECIPIENT_SEPARATOR)), row.getString(2),
+        row.getString(3), row.getBoolean(4)),
+        row.getString(5) == null ? null : row.getInt(5), row.getString(6));
+  }
+
+  /**
+   * Marks emails as sent.
+   *
+   * @param db  the game database
+   * @param ids IDs of the emails
+   * @param now the current time
+   * @throws DBAccessException if something goes wrong with the database
+   */
+  static void markSent(DBProxy db, List<Integer> ids, long now) throws DBAccessException {
+    List<List<String>> rows = new ArrayList<>();
+    for (int id : ids) {
+      rows.add(DBMethods.parameters(now, id));
+    }
+    db.updateBatch("update outbox set sent = ? where id = ?", rows);
+  }
+
+  /**
+   * Records a failed attempt at each of some emails. An email is tried again
+   * after a delay that doubles with every attempt, or given up on once it has
+   * been tried maxAttempts times.
+   *
+   * @param db          the game database
+   * @param ids         IDs of the emails
+   * @param now         the current time
+   * @param retryMillis the delay after the first failed attempt
+   * @param maxAttempts the number of attempts before giving up
+   * @throws DBAccessException if something goes wrong with the database
+   */
+  static void markFailed(DBProxy db, List<Integer> ids, long now, long retryMillis,
+      int maxAttempts) throws DBAccessException {
+    List<List<String>> rows = new ArrayList<>();
+    for (int id : ids) {
+      rows.add(DBMethods.parameters(now, retryMillis, maxAttempts, now, id));
+    }
+    db.updateBatch("update outbox set attempts = attempts + 1, "
+        + "next_attempt = ? + (cast(? as integer) << min(attempts, 30)), "
+        + "failed = case when attempts + 1 >= cast(? as integer) then ? end where id = ?",
+        rows);
+  }
+
+  /**
+   * Makes claimed emails due again at a given time, without counting an
+   * attempt, e.g. when they could not be queued.
+   *
+   * @param db   the game database
+   * @param ids  IDs of the emails
+   * @param when when the emails are due
+   * @throws DBAccessException if something goes wrong with the database
+   */
+  static void release(DBProxy db, List<Integer> ids, long when) throws DBAccessException {
+    List<List<String>> rows = new ArrayList<>();
+    for (int id : ids) {
+      rows.add(DBMethods.parameters(when, id));
+    }
+    db.updateBatch("update outbox set next_attempt = ? where id = ?", rows);
+  }
+}
@@ -0,0 +1,326 @@
+package edu.brown.cs.assassin.email;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import edu.brown.cs.assassin.database.DBProxy;
+import edu.brown.cs.assassin.database.DBRegistry;
+import edu.brown.cs.assassin.exception.DBAccessException;
+import edu.brown.cs.assassin.main.AssassinConstants;
+
+/**
+ * Sends the emails in the Outbox of the game database currently in use. One
+ * background thread claims the due emails a batch at a time and hands them to
+ * an EmailQueue to send, merging game notifications into Digests on the way.
+ * As the queue reports back, the thread marks the
+ * emails as sent, or as failed to be tried again later, a batch of updates at
+ * a time. It wakes up whenever an email is committed to the outbox, and every
+ * poll interval in case one was missed (e.g. one due to be tried again).
+ *
+ * <p>
+ * The queue tries each email once; the outbox's own attempts are the only
+ * retries. The next batch is only claimed once the queue has finished the
+ * last one, so emails never wait in the queue while their lease runs out.
+ * Emails claimed but not finished when the server stops are sent after it
+ * restarts, once their lease ends. The lease must be longer than the queue
+ * takes to send or give up on a batch, or an email may be sent twice. An
+ * outbox email merged into several digests (because its recipients got
+ * different ones) only counts as sent once all of them are; if any fails, it is
+ * tried again for all of its recipients.
+ */
+public final class OutboxDispatcher {
+  private static final AtomicReference<OutboxDispatcher> RUNNING = new AtomicReference<>();
+
+  private final EmailQueue queue;
+  private final int batchSize;
+  private final long pollMillis;
+  private final long leaseMillis;
+  private final long retryMillis;
+  private final int maxAttempts;
+
+  // Results reported by the queue, not yet written to the database
+  private final Queue<Result> results = new ConcurrentLinkedQueue<>();
+  // Emails handed to the queue that it has not finished with
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final Object signal = new Object();
+  private boolean woken;
+  private volatile boolean stopped;
+  private Thread thread;
+
+  /**
+   * What became of an email claimed from a database.
+   */
+  private static final class Result {
+    private final DBProxy db;
+    private final int id;
+    private final boolean sent;
+
+    Result(DBProxy db, int id, boolean sent) {
+      this.db = db;
+      this.id = id;
+      this.sent = sent;
+    }
+  }
+
+  /**
+   * The digests an outbox email is part of that have not been sent or given
+   * up on yet. Guarded by its own lock.
+   */
+  private static final class Parts {
+    private final int id;
+    private int unfinished;
+    private int queued;
+    private boolean failed;
+
+    Parts(int id) {
+      this.id = id;
+    }
+  }
+
+  /**
+   * Creates a dispatcher configured by AssassinConstants.
+   *
+   * @param queue the queue to send the emails with
+   */
+  public OutboxDispatcher(EmailQueue queue) {
+    this(queue, AssassinConstants.OUTBOX_BATCH_SIZE, AssassinConstants.OUTBOX_POLL_MILLIS,
+        AssassinConstants.OUTBOX_LEASE_MILLIS, AssassinConstants.OUTBOX_RETRY_MILLIS,
+        AssassinConstants.OUTBOX_MAX_ATTEMPTS);
+  }
+
+  /**
+   * Creates a dispatcher.
+   *
+   * @param queue       the queue to send the emails with
+   * @param batchSize   the maximum number of emails claimed at once
+   * @param pollMillis  how often to look for due emails without being woken
+   * @param leaseMillis how long a claimed email waits before being claimed
+   *                    again, if it is not marked as sent or failed
+   * @param retryMillis the delay before claiming an email again after it
+   *                    first fails
+   * @param maxAttempts the number of times to claim an email before giving up
+   */
+  public OutboxDispatcher(EmailQueue queue, int batchSize, long pollMillis, long leaseMillis,
+      long retryMillis, int maxAttempts) {
+    if (batchSize < 1 || pollMillis < 1 || leaseMillis < 1 || retryMillis < 0
+        || maxAttempts < 1) {
+      throw new IllegalArgumentException("Invalid outbox dispatcher configuration.");
+    }
+    this.queue = queue;
+    this.batchSize = batchSize;
+    this.pollMillis = pollMillis;
+    this.leaseMillis = leaseMillis;
+    this.retryMillis = retryMillis;
+    this.maxAttempts = maxAttempts;
+  }
+
+  /**
+   * Starts sending emails in the background. Only one dispatcher runs at a
+   * time.
+   *
+   * @throws IllegalStateException if another dispatcher is running
+   */
+  public synchronized void start() {
+    if (!RUNNING.compareAndSet(null, this)) {
+      throw new IllegalStateException("An outbox dispatcher is already running.");
+    }
+    stopped = false;
+    thread = new Thread(this::run, "email-outbox");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Stops the background thread, waiting for it to finish its batch. Emails
+   * already handed to the queue are still sent, but are only marked as sent
+   * if dispatchBatch is called again.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public synchronized void stop() throws InterruptedException {
+    if (thread == null) {
+      return;
+    }
+    stopped = true;
+    wake();
+    thread.join();
+    thread = null;
+    RUNNING.compareAndSet(this, null);
+  }
+
+  /**
+   * Wakes the running dispatcher, if any, to look for due emails.
+   */
+  static void wakeRunning() {
+    OutboxDispatcher running = RUNNING.get();
+    if (running != null) {
+      running.wake();
+    }
+  }
+
+  private void wake() {
+    synchronized (signal) {
+      woken = true;
+      signal.notifyAll();
+    }
+  }
+
+  private void run() {
+    while (!stopped) {
+      int claimed;
+      try {
+        claimed = dispatchBatch();
+      } catch (DBAccessException e) {
+        // e.g. the database is being swapped; try again at the next poll
+        claimed = 0;
+      }
+      if (claimed < batchSize) {
+        synchronized (signal) {
+          if (!woken && !stopped) {
+            try {
+              signal.wait(pollMillis);
+            } catch (InterruptedException e) {
+              return;
+            }
+          }
+          woken = false;
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes the results reported so far to the database, then, if the queue has
+   * finished the last batch, claims a batch of due emails and queues them to be
+   * sent.
+   *
+   * @return the number of emails claimed
+   * @throws DBAccessException if something goes wrong with the database
+   */
+  public int dispatchBatch() throws DBAccessException {
+    DBProxy db = DBRegistry.getGameDB();
+    recordResults(db);
+    if (inFlight.get() > 0) {
+      return 0;
+    }
+    long now = System.currentTimeMillis();
+    List<Outbox.Entry> entries = Outbox.claim(db, batchSize, now, now + leaseMillis);
+    List<Digests.Digest> digests = Digests.merge(entries, AssassinConstants.EMAIL_CHUNK_SIZE);
+    if (digests.size() > batchSize) {
+      // A big game's notifications are claimed together, and may take several
+      // batches' worth of time to send
+      List<Integer> ids = new ArrayList<>();
+      for (Outbox.Entry entry : entries) {
+        ids.add(entry.getID());
+      }
+      long batches = (digests.size() + batchSize - 1) / batchSize;
+      Outbox.release(db, ids, now + leaseMillis * batches);
+    }
+    Map<Integer, Parts> parts = new HashMap<>();
+    for (Digests.Digest digest : digests) {
+      for (int id : digest.getIDs()) {
+        parts.computeIfAbsent(id, Parts::new).unfinished++;
+      }
+    }
+
+    List<Integer> refused = new ArrayList<>();
+    boolean full = false;
+    for (Digests.Digest digest : digests) {
+      List<Parts> of = new ArrayList<>();
+      for (int id : digest.getIDs()) {
+        Parts p = parts.get(id);
+        synchronized (p) {
+          p.queued++;
+        }
+        of.add(p);
+      }
+      // Once the queue is full, leave the rest for the next poll
+      inFlight.incrementAndGet();
+      full = full || !queue.enqueue(digest.getEmail(), 1, sent -> {
+        for (Parts p : of) {
+          finish(db, p, sent, null);
+        }
+        inFlight.decrementAndGet();
+        wake();
+      });
+      if (full) {
+        inFlight.decrementAndGet();
+        for (Parts p : of) {
+          synchronized (p) {
+            p.queued--;
+          }
+          finish(db, p, false, refused);
+        }
+      }
+    }
+    Outbox.release(db, refused, now + pollMillis);
+    return entries.size();
+  }
+
+  /**
+   * Records that one of the digests an outbox email is part of was sent,
+   * failed, or (if refused is given) could not be queued. Once none are left,
+   * the email is reported sent if all of them were, or released to be claimed
+   * again if none could be queued, and reported failed otherwise.
+   */
+  private void finish(DBProxy db, Parts p, boolean sent, List<Integer> refused) {
+    boolean done;
+    boolean release;
+    boolean allSent;
+    synchronized (p) {
+      p.failed |= !sent;
+      p.unfinished--;
+      done = p.unfinished == 0;
+      release = p.queued == 0;
+      allSent = !p.failed;
+    }
+    if (!done) {
+      return;
+    }
+    if (release && refused != null) {
+      refused.add(p.id);
+    } else {
+      report(new Result(db, p.id, allSent));
+    }
+  }
+
+  /**
+   * @return the number of emails handed to the queue that it has not finished
+   *         with
+   */
+  int getInFlightCount() {
+    return inFlight.get();
+  }
+
+  private void report(Result result) {
+    results.add(result);
+    wake();
+  }
+
+  /**
+   * Marks the emails the queue has reported on as sent or failed.
+   *
+   * @param db the game database currently in use
+   * @throws DBAccessException if something goes wrong with the database
+   */
+  void recordResults(DBProxy db) throws DBAccessException {
+    List<Integer> sent = new ArrayList<>();
+    List<Integer> failed = new ArrayList<>();
+    Result result;
+    while ((result = results.poll()) != null) {
+      // Results for a database that has since been swapped out are dropped
+      if (result.db == db) {
+        (result.sent ? sent : failed).add(result.id);
+      }
+    }
+    long now = System.currentTimeMillis();
+    Outbox.markSent(db, sent, now);
+    Outbox.markFailed(db, failed, now, retryMillis, maxAttempts);
+  }
+}
@@ -0,0 +1,41 @@
+package edu.brown.cs.assassin.email;
+
+import javax.mail.MessagingException;
+
+import edu.brown.cs.assassin.login.Login;
+import edu.brown.cs.assassin.main.AssassinConstants;
+
+/**
+ * Sends emails from the Assassin game's account over SMTP, through a pool of
+ * logged in connections.
+ */
+public final class SmtpTransport implements MailTransport {
+  private final TransportPool transports;
+
+  /**
+   * Creates a transport for the server and account in AssassinConstants. No
+   * connection is opened until the first email is sent.
+   */
+  public SmtpTransport() {
+    transports = new TransportPool(AssassinConstants.SMTP_HOST, AssassinConstants.SMTP_PORT,
+        AssassinConstants.USERNAME,
+        Login.decrypt(AssassinConstants.PASSWORD, AssassinConstants.KEY),
+        AssassinConstants.SMTP_POOL_SIZE, AssassinConstants.SMTP_IDLE_MILLIS,
+        AssassinConstants.SMTP_TIMEOUT_MILLIS);
+  }
+
+  @Override
+  public boolean send(Email email) {
+    try {
+      transports.send(EmailSender.toMessage(email, transports.getSession()));
+      return true;
+    } catch (MessagingException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public void close() {
+    transports.close();
+  }
+}
@@ -0,0 +1,173 @@
+package edu.brown.cs.assassin.email;
+
+import java.util.Properties;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+
+/**
+ * Connected, logged in SMTP transports, reused from one email to the next so
+ * that each email does not pay for its own connection, TLS handshake and
+ * login. At most maxSize transports are open at once; a send that finds them
+ * all in use waits for one.
+ *
+ * <p>
+ * A transport left idle for longer than the idle timeout is closed rather than
+ * reused, since the server may have dropped it. If sending on a reused
+ * transport fails, it is closed and the email is tried once more on a new
+ * connection.
+ */
+final class TransportPool {
+  private final Session session;
+  private final String host;
+  private final int port;
+  private final String username;
+  private final String password;
+  private final long idleMillis;
+  private final Semaphore permits;
+  // Idle transports, most recently used first
+  private final BlockingDeque<IdleTransport> idle = new LinkedBlockingDeque<>();
+
+  /**
+   * A transport and when it was last used.
+   */
+  private static final class IdleTransport {
+    private final Transport transport;
+    private final long since;
+
+    IdleTransport(Transport transport, long since) {
+      this.transport = transport;
+      this.since = since;
+    }
+  }
+
+  /**
+   * Creates an empty pool; connections are opened as they are needed.
+   *
+   * @param host          the SMTP server
+   * @param port          the SMTP port, which must support STARTTLS
+   * @param username      the account to log in as
+   * @param password      the password of the account
+   * @param maxSize       the maximum number of open transports
+   * @param idleMillis    how long a transport may sit unused and still be
+   *                      reused
+   * @param timeoutMillis the timeout for connecting, reading and writing
+   */
+  TransportPool(String host, int port, String username, String password, int maxSize,
+      long idleMillis, long timeoutMillis) {
+    Properties properties = new Properties();
+    properties.setProperty("mail.smtp.host", host);
+    properties.setProperty("mail.smtp.port", Integer.toString(port));
+    properties.setProperty("mail.smtp.starttls.enable", "true");
+    properties.setProperty("mail.smtp.auth", "true");
+    properties.setProperty("mail.smtp.connectiontimeout", Long.toString(timeoutMillis));
+    properties.setProperty("mail.smtp.timeout", Long.toString(timeoutMillis));
+    properties.setProperty("mail.smtp.writetimeout", Long.toString(timeoutMillis));
+    this.session = Session.getInstance(properties);
+    this.host = host;
+    this.port = port;
+    this.username = username;
+    this.password = password;
+    this.idleMillis = idleMillis;
+    this.permits = new Semaphore(maxSize, true);
+  }
+
+  /**
+   * @return the session messages sent through this pool should be created in
+   */
+  Session getSession() {
+    return session;
+  }
+
+  /**
+   * Sends a message to all of its recipients.
+   *
+   * @param message the message
+   * @throws MessagingException if the message could not be sent
+   */
+  void send(Message message) throws MessagingException {
+    try {
+      permits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MessagingException("Interrupted while waiting for a mail connection.");
+    }
+    try {
+      Transport transport = takeIdle();
+      if (transport != null) {
+        try {
+          transport.sendMessage(message, message.getAllRecipients());
+          putIdle(transport);
+          return;
+        } catch (MessagingException e) {
+          // The connection may have gone stale; try once more on a new one
+          closeQuietly(transport);
+        }
+      }
+      transport = connect();
+      try {
+        transport.sendMessage(message, message.getAllRecipients());
+      } catch (MessagingException e) {
+        closeQuietly(transport);
+        throw e;
+      }
+      putIdle(transport);
+    } finally {
+      permits.release();
+    }
+  }
+
+  private Transport takeIdle() {
+    IdleTransport next;
+    while ((next = idle.pollFirst()) != null) {
+      if (System.currentTimeMillis() - next.since <= idleMillis
+          && next.transport.isConnected()) {
+        return next.transport;
+      }
+      closeQuietly(next.transport);
+    }
+    return null;
+  }
+
+  private void putIdle(Transport transport) {
+    idle.offerFirst(new IdleTransport(transport, System.currentTimeMillis()));
+    // The least recently used transports are at the end; close any that expired
+    IdleTransport oldest;
+    while ((oldest = idle.peekLast()) != null
+        && System.currentTimeMillis() - oldest.since > idleMillis) {
+      if (idle.removeLastOccurrence(oldest)) {
+        closeQuietly(oldest.transport);
+      }
+    }
+  }
+
+  private Transport connect() throws MessagingException {
+    Transport transport = session.getTransport("smtp");
+    transport.connect(host, port, username, password);
+    return transport;
+  }
+
+  private static void closeQuietly(Transport transport) {
+    try {
+      transport.close();
+    } catch (MessagingException e) {
+      // Already unusable
+    }
+  }
+
+  /**
+   * Closes every idle transport. Transports in use are closed when they are
+   * returned, if they have expired by then.
+   */
+  void close() {
+    IdleTransport next;
+    while ((next = idle.pollFirst()) != null) {
+      closeQuietly(next.transport);
+    }
+  }
+}
@@ -1,36 +1,35 @@
 package edu.brown.cs.assassin.game;
 
-import static edu.brown.cs.assassin.main.AssassinConstants.GAME_DATA_PATH;
-import static edu.brown.cs.assassin.main.AssassinConstants.GAME_TEST_DATA_PATH;
-
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
+import edu.brown.cs.assassin.database.CachedRow;
 import edu.brown.cs.assassin.database.DBMethods;
 import edu.brown.cs.assassin.database.DBProxy;
-import edu.brown.cs.assassin.email.EmailSender;
+import edu.brown.cs.assassin.database.DBRegistry;
+import edu.brown.cs.assassin.database.RowCache;
 import edu.brown.cs.assassin.exception.DBAccessException;
 import edu.brown.cs.assassin.exception.InvalidAccessException;
 import edu.brown.cs.assassin.exception.InvalidActionException;
 import edu.brown.cs.assassin.graph.Graph;
-import edu.brown.cs.assassin.graph.Target;
 
 /**
  * Represents a game of Assassin.
  */
 public class Game implements Identifiable {
-  private static DBProxy db;
-  private int id;
+  /**
+   * The most messages returned by one call to getMessagesBefore or
+   * getMessagesAfter.
+   */
+  public static final int MAX_MESSAGE_PAGE = 100;
 
-  static {
-    try {
-      db = new DBProxy(GAME_DATA_PATH);
-    } catch (DBAccessException e) {
-      System.err.println("Error connecting to database: " + e.getMessage());
-    }
-  }
+  private int id;
 
   /**
    * Creates a game object with given ID.
@@ -44,25 +43,27 @@ public class Game implements Identifiable {
   // DATABASE CONNECTIONS ======================================================
 
   /**
-   * Connects to the database used for storing actual game data.
+   * @return the game database, from the registry
+   * @throws DBAccessException if the database cannot be opened
    */
-  public static void connectToMainDB() {
-    try {
-      db = new DBProxy(GAME_DATA_PATH);
-    } catch (DBAccessException e) {
-      System.err.println("Error connecting to database: " + e.getMessage());
-    }
+  private static DBProxy db() throws DBAccessException {
+    return DBRegistry.getGameDB();
   }
 
   /**
-   * Connects to the database used for storing test game data.
+   * @return the cache of game rows, e.g. for its hit rate
+   * @throws DBAccessException if the database cannot be opened
    */
-  public static void connectToTestDB() {
-    try {
-      db = new DBProxy(GAME_TEST_DATA_PATH);
-    } catch (DBAccessException e) {
-      System.err.println("Error connecting to database: " + e.getMessage());
+  public static RowCache getRowCache() throws DBAccessException {
+    return db().getRowCache("select * from game where id = ?");
+  }
+
+  private CachedRow row() throws DBAccessException {
+    CachedRow row = getRowCache().get(id);
+    if (row == null) {
+      throw new DBAccessException("There is no game with id " + id);
     }
+    return row;
   }
 
   // GETTER METHODS ============================================================
@@ -80,12 +81,13 @@ public class Game implements Identifiable {
    * @throws DBAccessException if something goes wrong with the database
    */
   public GameStatus getStatus() throws DBAccessException {
-    String statusString = db
-        .executeQuery("select status from game where id = ?", DBMethods.parameters(id)).get(0)
-        .get(0);
-    if (statusString.equals("0")) {
+    return toStatus(row().getInt("status"));
+  }
+
+  private static GameStatus toStatus(int status) {
+    if (status == 0) {
       return GameStatus.FORMING;
-    } else if (statusString.equals("1")) {
+    } else if (status == 1) {
       return GameStatus.PLAYING;
     } else {
       return GameStatus.DONE;
@@ -97,8 +99,7 @@ public class Game implements Identifiable {
    * @throws DBAccessException if something goes wrong with the database
    */
   public String getName() throws DBAccessException {
-    return db.executeQuery("select name from game where id = ?", DBMethods.parameters(id)).get(0)
-        .get(0);
+    return row().getString("name");
   }
 
   /**
@@ -106,8 +107,7 @@ public class Game implements Identifiable {
    * @throws DBAccessException if something goes wrong with the database
    */
   public String getRules() throws DBAccessException {
-    return db.executeQuery("select rules from game where id = ?", DBMethods.parameters(id)).get(0)
-        .get(0);
+    return row().getString("rules");
   }
 
   /**
@@ -115,10 +115,7 @@ public class Game implements Identifiable {
    * @throws DBAccessException if something goes wrong with the database
    */
   public int getMaxTeamSize() throws DBAccessException {
-    String maxSizeString = db
-        .executeQuery("select max_team_size from game where id = ?", DBMethods.parameters(id))
-        .get(0).get(0);
-    return Integer.parseInt(maxSizeString);
+    return row().getInt("max_team_size");
   }
 
   /**
@@ -126,10 +123,7 @@ public class Game implements Identifiable {
    * @throws DBAccessException if something goes wrong with the database
    */
   public int getNumTargets() throws DBAccessException {
-    String numTargetsString = db
-        .executeQuery("select num_targets from game where id = ?", DBMethods.parameters(id)).get(0)
-        .get(0);
-    return Integer.parseInt(numTargetsString);
+    return row().getInt("num_targets");
   }
 
   /**
@@ -137,10 +131,7 @@ public class Game implements Identifiable {
    * @throws DBAccessException if something goes wrong with the database
    */
   public Instant getCreatedTime() throws DBAccessException {
-    String createdString = db
-        .executeQuery("select created from game where id = ?", DBMethods.parameters(id)).get(0)
-        .get(0);
-    return DBMethods.convertTime(createdString);
+    return Instant.ofEpochSecond(row().getLong("created"));
   }
 
   /**
@@ -149,10 +140,7 @@ public class Game implements Identifiable {
    * @throws DBAccessException if something goes wrong with the database
    */
   public boolean isAnonymous() throws DBAccessException {
-    String anonymousString = db
-        .executeQuery("select anonymous from game where id = ?", DBMethods.parameters(id)).get(0)
-        .get(0);
-    return anonymousString.equals("1");
+    return row().getBoolean("anonymous");
   }
 
   /**
@@ -160,8 +148,7 @@ public class Game implements Identifiable {
    * @throws DBAccessException if something goes wrong with the database
    */
   public String getJoinCode() throws DBAccessException {
-    return db.executeQuery("select join_code from game where id = ?", DBMethods.parameters(id))
-        .get(0).get(0);
+    return row().getString("join_code");
   }
 
   /**
@@ -170,13 +157,8 @@ public class Game implements Identifiable {
    * @throws InvalidAccessException if the database contains an invalid team ID
    */
   public List<Team> getTeams() throws DBAccessException, InvalidAccessException {
-    List<List<String>> teamStrings = db.executeQuery("select id from team where game = ?",
-        DBMethods.parameters(id));
-    List<Team> teams = new ArrayList<>();
-    for (List<String> teamString : teamStrings) {
-      teams.add(Team.fromID(Integer.parseInt(teamString.get(0))));
-    }
-    return teams;
+    return db().query("select id from team where game = ?", DBMethods.parameters(id),
+        row -> new Team(row.getInt(0)));
   }
 
   /**
@@ -185,13 +167,8 @@ public class Game implements Identifiable {
    * @throws InvalidAccessException if the database contains an invalid team ID
    */
   public List<Team> getAliveTeams() throws DBAccessException, InvalidAccessException {
-    List<List<String>> teamStrings = db
-        .executeQuery("select id from team where game = ? and alive = 1", DBMethods.parameters(id));
-    List<Team> teams = new ArrayList<>();
-    for (List<String> teamString : teamStrings) {
-      teams.add(Team.fromID(Integer.parseInt(teamString.get(0))));
-    }
-    return teams;
+    return db().query("select id from team where game = ? and alive = 1",
+        DBMethods.parameters(id), row -> new Team(row.getInt(0)));
   }
 
   /**
@@ -200,15 +177,80 @@ public class Game implements Identifiable {
    * @throws InvalidAccessException if the database contains an invalid user ID
    */
   public List<User> getAdmin() throws DBAccessException, InvalidAccessException {
-    List<List<String>> adminStrings = db.executeQuery("select user from admin where game = ?",
-        DBMethods.parameters(id));
+    List<Integer> adminIDs = db().query("select user from admin where game = ?",
+        DBMethods.parameters(id), row -> row.getInt(0));
     List<User> admin = new ArrayList<>();
-    for (List<String> adminString : adminStrings) {
-      admin.add(User.fromID(Integer.parseInt(adminString.get(0))));
+    for (int adminID : adminIDs) {
+      admin.add(User.fromID(adminID));
     }
     return admin;
   }
 
+  /**
+   * Loads everything needed to render this game's page: its settings, teams,
+   * players and their names, and targets. Uses a fixed number of queries no
+   * matter how many teams and players there are, instead of walking from the
+   * game to its teams to their players one query at a time. The queries run in
+   * one read transaction, so they all see the game in the same state.
+   *
+   * @return a snapshot of this game
+   * @throws DBAccessException if something goes wrong with the database
+   */
+  public GameSnapshot getSnapshot() throws DBAccessException {
+    try {
+      return db().inReadTransaction(this::loadSnapshot);
+    } catch (InvalidAccessException | InvalidActionException e) {
+      // Loading the snapshot throws neither
+      throw new DBAccessException(e.getMessage());
+    }
+  }
+
+  private GameSnapshot loadSnapshot() throws DBAccessException {
+    CachedRow game = db().queryFirst("select * from game where id = ?",
+        DBMethods.parameters(id), CachedRow::new);
+    if (game == null) {
+      throw new DBAccessException("There is no game with id " + id);
+    }
+
+    List<CachedRow> playerRows = db().query("select player.id, player.user, player.team, "
+        + "player.alive, player.kill_code, account.name from player "
+        + "join team on player.team = team.id "
+        + "left join login.login as account on account.id = player.user "
+        + "where team.game = ? order by player.id", DBMethods.parameters(id), CachedRow::new);
+
+    Map<Integer, List<GameSnapshot.PlayerView>> playersByTeam = new HashMap<>();
+    Map<Integer, GameSnapshot.PlayerView> playersByUser = new HashMap<>();
+    for (CachedRow player : playerRows) {
+      int userID = player.getInt("user");
+      int teamID = player.getInt("team");
+      GameSnapshot.PlayerView view = new GameSnapshot.PlayerView(player.getInt("id"), userID,
+          teamID, player.getString("name"), player.getBoolean("alive"),
+          player.getString("kill_code"));
+      playersByTeam.computeIfAbsent(teamID, t -> new ArrayList<>()).add(view);
+      playersByUser.put(userID, view);
+    }
+
+    Map<Integer, List<Integer>> targetsByTeam = new HashMap<>();
+    db().forEachRow("select target.killer, target.target from target "
+        + "join team on target.killer = team.id where team.game = ?", DBMethods.parameters(id),
+        row -> targetsByTeam.computeIfAbsent(row.getInt(0), t -> new ArrayList<>())
+            .add(row.getInt(1)));
+
+    List<GameSnapshot.TeamView> teams = db().query("select id, codename, alive, join_code from team "
+        + "where game = ? order by id", DBMethods.parameters(id),
+        row -> new GameSnapshot.TeamView(row.getInt(0), row.getString(1), row.getBoolean(2),
+            row.getString(3), playersByTeam.getOrDefault(row.getInt(0), new ArrayList<>()),
+            targetsByTeam.getOrDefault(row.getInt(0), new ArrayList<>())));
+
+    Set<Integer> adminIDs = new HashSet<>(db().query("select user from admin where game = ?",
+        DBMethods.parameters(id), row -> row.getInt(0)));
+
+    return new GameSnapshot(this, game.getString("name"), game.getString("rules"), toStatus(game.getInt("status")),
+        game.getInt("max_team_size"), game.getInt("num_targets"), game.getBoolean("anonymous"),
+        game.getString("join_code"), Instant.ofEpochSecond(game.getLong("created")), teams,
+        playersByUser, adminIDs);
+  }
+
   /**
    * Get the last n messages that were sent in this game, most recent first.
    *
@@ -219,14 +261,40 @@ public class Game implements Identifiable {
    */
   public List<Message> getMessages(int numMessages)
       throws DBAccessException, InvalidAccessException {
-    String query = "select id from message where game = ? order by id desc " + "limit ?";
-    List<String> parameters = DBMethods.parameters(id, numMessages);
-    List<List<String>> messageStrings = db.executeQuery(query, parameters);
-    List<Message> messages = new ArrayList<>();
-    for (List<String> messageString : messageStrings) {
-      messages.add(Message.fromID(Integer.parseInt(messageString.get(0))));
-    }
-    return messages;
+    return Message.loadLatest(this, numMessages);
+  }
+
+  /**
+   * Get a page of the messages sent in this game before a given message, for
+   * loading older history. Pass the ID of the oldest message already seen to
+   * get the page before it.
+   *
+   * @param beforeID    the ID of a message; only earlier messages are returned
+   * @param numMessages the page size, clamped between 1 and MAX_MESSAGE_PAGE
+   * @return The latest messages before the given one, most recent first
+   * @throws DBAccessException if something goes wrong with the database
+   */
+  public List<Message> getMessagesBefore(int beforeID, int numMessages)
+      throws DBAccessException {
+    return Message.loadBefore(this, beforeID,
+        Math.max(1, Math.min(numMessages, MAX_MESSAGE_PAGE)));
+  }
+
+  /**
+   * Get a page of the messages sent in this game after a given message, for
+   * catching up. Pass the ID of the newest message already seen to get only
+   * the messages since. If a full page is returned, there may be more: pass
+   * the ID of its most recent message to get the next page.
+   *
+   * @param afterID     the ID of a message; only later messages are returned
+   * @param numMessages the page size, clamped between 1 and MAX_MESSAGE_PAGE
+   * @return The earliest messages after the given one, most recent first
+   * @throws DBAccessException if something goes wrong with the database
+   */
+  public List<Message> getMessagesAfter(int afterID, int numMessages)
+      throws DBAccessException {
+    return Message.loadAfter(this, afterID,
+        Math.max(1, Math.min(numMessages, MAX_MESSAGE_PAGE)));
   }
 
   // GAME ACTIONS ==============================================================
@@ -241,7 +309,9 @@ public class Game implements Identifiable {
     if (getStatus() != GameStatus.FORMING) {
       throw new InvalidActionException("This game has already started.");
     }
-    db.updateDatabase("update game set status = 1 where id = ?", DBMethods.parameters(id));
+    db().updateDatabase("update game set status = 1 where id = ?", DBMethods.parameters(id));
+    getRowCache().invalidate(id);
+    GameVersions.gameListChanged(this);
   }
 
   /**
@@ -255,7 +325,9 @@ public class Game implements Identifiable {
       throw new InvalidActionException(
           "This game is not currently playing, so it cannot be ended.");
     }
-    db.updateDatabase("update game set status = 2 where id = ?", DBMethods.parameters(id));
+    db().updateDatabase("update game set status = 2 where id = ?", DBMethods.parameters(id));
+    getRowCache().invalidate(id);
+    GameVersions.gameListChanged(this);
   }
 
   /**
@@ -272,7 +344,7 @@ public class Game implements Identifiable {
 
     String emailSubject = String.format("The game %s has started!", getName());
     String emailText = "Log in to see your team’s targets.";
-    emailBlast(emailSubject, emailText);
+    emailBlast(emailSubject, emailText, MessageType.START);
   }
 
   /**
@@ -290,7 +362,7 @@ public class Game implements Identifiable {
 
     String emailSubject = String.format("The game %s has ended!", getName());
     String emailText = String.format("Congratulations to %s for winning!", winner.getCodename());
-    emailBlast(emailSubject, emailText);
+    emailBlast(emailSubject, emailText, MessageType.WIN);
   }
 
   /**
@@ -312,7 +384,7 @@ public class Game implements Identifiable {
       emailText.append("<br>");
     }
     Message.addMessage(this, MessageType.END);
-    emailBlast(emailSubject, emailText.toString());
+    emailBlast(emailSubject, emailText.toString(), MessageType.END);
   }
 
   /**
@@ -322,7 +394,9 @@ public class Game implements Identifiable {
    * @throws DBAccessException if something goes wrong with the database
    */
   public void changeName(String name) throws DBAccessException {
-    db.updateDatabase("update game set name = ? where id = ?", DBMethods.parameters(name, id));
+    db().updateDatabase("update game set name = ? where id = ?", DBMethods.parameters(name, id));
+    getRowCache().invalidate(id);
+    GameVersions.gameListChanged(this);
     Message.addMessage(this, MessageType.CHANGE_NAME, name);
   }
 
@@ -333,7 +407,10 @@ public class Game implements Identifiable {
    * @throws DBAccessException if something goes wrong with the database
    */
   public void changeRules(String rules) throws DBAccessException {
-    db.updateDatabase("update game set rules = ? where id = ?", DBMethods.parameters(rules, id));
+    db().updateDatabase("update game set rules = ? where id = ?", DBMethods.parameters(rules, id));
+    getRowCache().invalidate(id);
+    GameVersions.changed(this);
+    GameEvents.rulesChanged(this);
     Message.addMessage(this, MessageType.CHANGE_RULES, rules);
   }
 
@@ -345,8 +422,10 @@ public class Game implements Identifiable {
    */
   public void changeAnonymity(boolean anon) throws DBAccessException {
     String anonString = anon ? "1" : "0";
-    db.updateDatabase("update game set anonymous = ? where id = ?",
+    db().updateDatabase("update game set anonymous = ? where id = ?",
         DBMethods.parameters(anonString, id));
+    getRowCache().invalidate(id);
+    GameVersions.changed(this);
     if (anon) {
       Message.addMessage(this, MessageType.CHANGE_ANON);
     } else {
@@ -365,34 +444,53 @@ public class Game implements Identifiable {
     if (targets < 1) {
       throw new InvalidActionException("Number of targets must be positive.");
     }
-    db.updateDatabase("update game set num_targets = ? where id = ?",
+    db().updateDatabase("update game set num_targets = ? where id = ?",
         DBMethods.parameters(targets, id));
+    getRowCache().invalidate(id);
+    GameVersions.changed(this);
     Message.addMessage(this, MessageType.CHANGE_NUM_TARGETS, Integer.toString(targets));
   }
 
   /**
-   * Sends an email containing subject and text to all the players in the game.
+   * Sends an email containing subject and text to all the players and admins in
+   * the game, in the background. The email goes out in chunks, with the
+   * recipients hidden from each other.
    *
    * @param subject the subject of the email.
    * @param text    the body of the email, which can be formatted like html.
-   * @return whether the blast sent properly.
+   * @return whether the blast was queued to be sent.
    * @throws DBAccessException      if something goes wrong with the database
    * @throws InvalidAccessException if the database contains an invalid user ID
    */
   public boolean emailBlast(String subject, String text)
       throws DBAccessException, InvalidAccessException {
-    List<String> recipients = new ArrayList<>();
-    List<List<String>> playerIds = db.executeQuery(
-        "SELECT player.user FROM player JOIN team ON player.team = team.id WHERE team.game = ?",
-        DBMethods.parameters(id));
-    playerIds
-        .addAll(db.executeQuery("SELECT user FROM admin WHERE game = ?", DBMethods.parameters(id)));
-    for (List<String> playerID : playerIds) {
-      User u = User.fromID(Integer.parseInt(playerID.get(0)));
-      recipients.add(u.getEmail());
-    }
+    return emailBlast(subject, text, null);
+  }
+
+  /**
+   * Sends an email to all the players and admins in the game about an event,
+   * merged into a digest with the game's other notifications sent around the
+   * same time.
+   *
+   * @param subject the subject of the email.
+   * @param text    the body of the email, which can be formatted like html.
+   * @param event   what happened, or null to send the email without waiting.
+   * @return whether the blast was queued to be sent.
+   * @throws DBAccessException      if something goes wrong with the database
+   * @throws InvalidAccessException if the database contains an invalid user ID
+   */
+  boolean emailBlast(String subject, String text, MessageType event)
+      throws DBAccessException, InvalidAccessException {
+    // Players, then admins, with their emails from the attached login database. An
+    // admin who also plays is listed twice, but only gets one copy.
+    List<String> recipients = db().query("SELECT account.email FROM player "
+        + "JOIN team ON player.team = team.id "
+        + "JOIN login.login AS account ON account.id = player.user WHERE team.game = ? "
+        + "UNION ALL SELECT account.email FROM admin "
+        + "JOIN login.login AS account ON account.id = admin.user WHERE admin.game = ?",
+        DBMethods.parameters(id, id), row -> row.getString(0));
     String subjectWithGame = String.format("[Assassin Game: %s] %s", getName(), subject);
-    return EmailSender.send(recipients, subjectWithGame, text);
+    return GameEmails.sendBulk(this, event, recipients, subjectWithGame, text);
   }
 
   /**
@@ -405,11 +503,18 @@ public class Game implements Identifiable {
         + "(SELECT target.killer FROM target INNER JOIN team "
         + "ON target.killer = team.id AND team.game = ?);";
     List<String> parameters = DBMethods.parameters(id);
-    db.updateDatabase(command, parameters);
+    db().updateDatabase(command, parameters);
+    GameVersions.changed(this);
+    GameEvents.targetsChanged(this);
   }
 
   /**
-   * Generates a new target graph for the teams in this game.
+   * Generates a new target graph for the teams in this game. The graph is built
+   * outside any transaction, since that can take a while for big games; the old
+   * targets are then replaced in one transaction, so the game is never seen
+   * without targets, and keeps its old ones if the new ones cannot be added. If
+   * the living teams or the number of targets change while the graph is being
+   * built, it is built again.
    *
    * @throws DBAccessException      if something goes wrong with the database
    * @throws InvalidAccessException if the database contains an invalid ID
@@ -417,32 +522,40 @@ public class Game implements Identifiable {
    */
   public void generateNewTargets()
       throws DBAccessException, InvalidAccessException, InvalidActionException {
-    clearTargets();
-
-    // Retrieve list of teams
-    List<Team> teamList = getAliveTeams();
-    if (teamList.size() < 2) {
-      throw new InvalidActionException(
-          "Not enough teams in this game to generate new targets (Number of teams: "
-              + teamList.size() + ")");
-    }
-
-    // Retrieve num targets per team
-    int numTargets = getNumTargets();
-
-    // Create graph
-    Graph<Team> g = new Graph<Team>(teamList, numTargets);
-
-    // Save targets generated by graph into database
-    for (Target<Team> t : g.getTargets()) {
-      t.getAssassin().addTarget(t.getTarget());
+    boolean replaced = false;
+    while (!replaced) {
+      // Retrieve list of teams
+      List<Team> teamList = getAliveTeams();
+      if (teamList.size() < 2) {
+        throw new InvalidActionException(
+            "Not enough teams in this game to generate new targets (Number of teams: "
+                + teamList.size() + ")");
+      }
+      Set<Team> teams = new HashSet<>(teamList);
+
+      // Retrieve num targets per team
+      int numTargets = getNumTargets();
+
+      // Create graph
+      Graph<Team> g = new Graph<Team>(teamList, numTargets);
+
+      replaced = db().inTransaction(() -> {
+        if (!teams.equals(new HashSet<>(getAliveTeams())) || numTargets != getNumTargets()) {
+          return false;
+        }
+        clearTargets();
+
+        // Save targets generated by graph into database
+        Team.addTargets(this, g.getTargets());
+
+        // Message and email
+        Message.addMessage(this, MessageType.NEW_TARGETS);
+        String emailSubject = "You have new targets";
+        String emailText = "Log into the game to check which teams you are now targeting.";
+        emailBlast(emailSubject, emailText, MessageType.NEW_TARGETS);
+        return true;
+      });
     }
-
-    // Message and email
-    Message.addMessage(this, MessageType.NEW_TARGETS);
-    String emailSubject = "You have new targets";
-    String emailText = "Log into the game to check which teams you are now targeting.";
-    emailBlast(emailSubject, emailText);
   }
 
   /**
@@ -458,27 +571,29 @@ public class Game implements Identifiable {
         + "select * from team, game where player.team = team.id and team.game = ? "
         + "and team.alive = 1);";
     List<String> parameters = DBMethods.parameters(id);
-    List<List<String>> playerQueryResults = db.executeQuery(query, parameters);
-    for (List<String> result : playerQueryResults) {
-      String idString = result.get(0);
-      String newKillCode = DBMethods.generateUniqueCode(db, "player", "kill_code");
-      String updateKillCodeCommand = "update player set kill_code = ? where id = ?";
-      List<String> updateKillCodeParameters = DBMethods.parameters(newKillCode, idString);
-      db.updateDatabase(updateKillCodeCommand, updateKillCodeParameters);
+    List<Integer> deadPlayerIDs = db().query(query, parameters, row -> row.getInt(0));
+    List<String> newKillCodes = DBMethods.generateUniqueCodes(deadPlayerIDs.size());
+    List<List<String>> updateKillCodeParameters = new ArrayList<>();
+    for (int i = 0; i < deadPlayerIDs.size(); i++) {
+      updateKillCodeParameters.add(DBMethods.parameters(newKillCodes.get(i),
+          deadPlayerIDs.get(i)));
     }
+    db().updateBatch("update player set kill_code = ? where id = ?", updateKillCodeParameters);
 
     String command = "update player set alive = 1 where exists ( "
         + "select * from team, game where player.team = team.id and team.game = ? "
         + "and team.alive = 1);";
 
-    db.updateDatabase(command, parameters);
+    db().updateDatabase(command, parameters);
+    Player.invalidateAll();
+    GameVersions.changed(this);
 
     // Message and email
     Message.addMessage(this, MessageType.REVIVE);
     String emailSubject = "Your team is revived";
     for (Team team : getAliveTeams()) {
       String emailText = String.format("All players on team %s are now alive.", team.getCodename());
-      team.emailEveryone(emailSubject, emailText);
+      team.emailEveryone(emailSubject, emailText, MessageType.REVIVE);
     }
   }
 
@@ -502,22 +617,20 @@ public class Game implements Identifiable {
     String gameCommand = "insert into game"
         + "(name, rules, max_team_size, created, join_code, num_targets, anonymous) "
         + "values (?, ?, ?, ?, ?, ?, ?)";
-    String code = DBMethods.generateUniqueCode(db, "game", "join_code");
+    String code = DBMethods.generateUniqueCode();
     String anonString = anon ? "1" : "0";
     List<String> gameParameters = DBMethods.parameters(name, rules, maxTeamSize,
         DBMethods.timeString(), code, numTargets, anonString);
-    db.updateDatabase(gameCommand, gameParameters);
+    int addedGameID = db().insert(gameCommand, gameParameters);
 
-    List<List<String>> addedGameQueryResult = db
-        .executeQuery("select last_insert_rowid() from game");
-    String addedGameIDString = addedGameQueryResult.get(0).get(0);
-    int addedGameID = Integer.parseInt(addedGameIDString);
     String adminCommand = "insert into admin (user, game) values (?, ?)";
     for (User a : admin) {
-      List<String> adminParameters = DBMethods.parameters(a, addedGameIDString);
-      db.updateDatabase(adminCommand, adminParameters);
+      List<String> adminParameters = DBMethods.parameters(a, addedGameID);
+      db().updateDatabase(adminCommand, adminParameters);
     }
-    return new Game(addedGameID);
+    Game added = new Game(addedGameID);
+    GameVersions.gameListChanged(added);
+    return added;
   }
 
   /**
@@ -529,7 +642,7 @@ public class Game implements Identifiable {
    * @throws InvalidAccessException if there is no game with this ID
    */
   public static Game fromID(int id) throws DBAccessException, InvalidAccessException {
-    if (db.hasKey("select * from game where id = ?", DBMethods.parameters(id))) {
+    if (getRowCache().get(id) != null) {
       return new Game(id);
     } else {
       throw new InvalidAccessException("There is no game with ID " + id);
@@ -545,14 +658,12 @@ public class Game implements Identifiable {
    * @throws InvalidAccessException if there is no game with this join code
    */
   public static Game fromJoinCode(String code) throws DBAccessException, InvalidAccessException {
-    List<List<String>> gameQueryResult = db.executeQuery(
-        "select id from game where status = 0 AND join_code = ?", DBMethods.parameters(code));
-    if (gameQueryResult.isEmpty()) {
+    Game game = db().queryFirst("select id from game where status = 0 AND join_code = ?",
+        DBMethods.parameters(code), row -> new Game(row.getInt(0)));
+    if (game == null) {
       throw new InvalidAccessException("There is no game with that join code.");
-    } else {
-      int gameID = Integer.parseInt(gameQueryResult.get(0).get(0));
-      return new Game(gameID);
     }
+    return game;
   }
 
   // OVERRIDE METHODS ==========================================================
@@ -0,0 +1,76 @@
+package edu.brown.cs.assassin.game;
+
+import java.util.List;
+
+import edu.brown.cs.assassin.email.Outbox;
+import edu.brown.cs.assassin.exception.DBAccessException;
+
+/**
+ * Sends the emails games send their players, in the background. Emails are
+ * written to the Outbox in the same transaction as the change that sends
+ * them, so they are sent exactly when the change commits, even across server
+ * restarts. Emails about an event in a game wait briefly, to be merged with
+ * the game's other notifications into one digest per recipient.
+ */
+final class GameEmails {
+
+  private GameEmails() {
+  }
+
+  /**
+   * Adds an email to the outbox.
+   *
+   * @param recipients the people to receive the email
+   * @param subject    the subject of the email
+   * @param text       the body of the email, which can be formatted like html
+   * @return true, once the email is in the outbox
+   * @throws DBAccessException if something goes wrong with the database
+   */
+  static boolean send(List<String> recipients, String subject, String text)
+      throws DBAccessException {
+    return send(null, null, recipients, subject, text);
+  }
+
+  /**
+   * Adds an email about an event in a game to the outbox.
+   *
+   * @param game       the game
+   * @param event      what happened, or null to send the email right away
+   * @param recipients the people to receive the email
+   * @param subject    the subject of the email
+   * @param text       the body of the email, which can be formatted like html
+   * @return true, once the email is in the outbox
+   * @throws DBAccessException if something goes wrong with the database
+   */
+  static boolean send(Game game, MessageType event, List<String> recipients, String subject,
+      String text) throws DBAccessException {
+    if (event == null) {
+      Outbox.add(recipients, subject, text);
+    } else {
+      Outbox.add(recipients, subject, text, game.getID(), event.name());
+    }
+    return true;
+  }
+
+  /**
+   * Adds an email to many people to the outbox, split into chunks sent with
+   * the recipients hidden from each other. Duplicate recipients get one copy.
+   *
+   * @param game       the game
+   * @param event      what happened, or null to send the email right away
+   * @param recipients the people to receive the email
+   * @param subject    the subject of the email
+   * @param text       the body of the email, which can be formatted like html
+   * @return true, once the email is in the outbox
+   * @throws DBAccessException if something goes wrong with the database
+   */
+  static boolean sendBulk(Game game, MessageType event, List<String> recipients,
+      String subject, String text) throws DBAccessException {
+    if (event == null) {
+      Outbox.addBulk(recipients, subject, text);
+    } else {
+      Outbox.addBulk(recipients, subject, text, game.getID(), event.name());
+    }
+    return true;
+  }
+}
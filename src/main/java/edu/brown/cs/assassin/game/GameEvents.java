@@ -0,0 +1,54 @@
+package edu.brown.cs.assassin.game;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import edu.brown.cs.assassin.database.DBRegistry;
+import edu.brown.cs.assassin.exception.DBAccessException;
+
+/**
+ * Tells GameListeners about changes made by the game classes. A change made
+ * inside a transaction is announced only once the transaction commits, and
+ * never if it rolls back.
+ */
+public final class GameEvents {
+  private static final List<GameListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+  private GameEvents() {
+  }
+
+  /**
+   * Registers a listener to be told about every change from now on.
+   *
+   * @param listener the listener
+   */
+  public static void addListener(GameListener listener) {
+    LISTENERS.add(listener);
+  }
+
+  /**
+   * Unregisters a listener added with addListener.
+   *
+   * @param listener the listener
+   */
+  public static void removeListener(GameListener listener) {
+    LISTENERS.remove(listener);
+  }
+
+  static void messageAdded(Message message) throws DBAccessException {
+    fire(listener -> listener.messageAdded(message));
+  }
+
+  static void targetsChanged(Game game) throws DBAccessException {
+    fire(listener -> listener.targetsChanged(game));
+  }
+
+  static void rulesChanged(Game game) throws DBAccessException {
+    fire(listener -> listener.rulesChanged(game));
+  }
+
+  private static void fire(Consumer<GameListener> event) throws DBAccessException {
+    DBRegistry.getGameDB().afterCommit(() -> LISTENERS.forEach(event));
+  }
+}
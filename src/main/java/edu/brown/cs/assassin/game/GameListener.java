@@ -0,0 +1,33 @@
+package edu.brown.cs.assassin.game;
+
+/**
+ * Notified of changes to games, once they have been committed to the
+ * database. Listeners are registered with GameEvents. All methods are called
+ * on the thread that made the change, so they should be quick and must not
+ * throw.
+ */
+public interface GameListener {
+  /**
+   * Called after a message has been added to a game.
+   *
+   * @param message the message, with its contents already loaded
+   */
+  default void messageAdded(Message message) {
+  }
+
+  /**
+   * Called after targets in a game have been added, removed or reassigned.
+   *
+   * @param game the game
+   */
+  default void targetsChanged(Game game) {
+  }
+
+  /**
+   * Called after a game's rules have been changed.
+   *
+   * @param game the game
+   */
+  default void rulesChanged(Game game) {
+  }
+}
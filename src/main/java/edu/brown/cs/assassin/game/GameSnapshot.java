@@ -0,0 +1,339 @@
+package edu.brown.cs.assassin.game;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * An immutable copy of everything needed to render a game's page: its
+ * settings, its teams with their players and the players' names, who is
+ * alive, and which teams target which. A snapshot is loaded with a handful of
+ * queries by Game.getSnapshot, however many players the game has, and is then
+ * read entirely from memory. It does not change when the game does.
+ */
+public final class GameSnapshot {
+  private final Game game;
+  private final String name;
+  private final String rules;
+  private final GameStatus status;
+  private final int maxTeamSize;
+  private final int numTargets;
+  private final boolean anonymous;
+  private final String joinCode;
+  private final Instant createdTime;
+  private final ImmutableList<TeamView> teams;
+  private final ImmutableMap<Integer, TeamView> teamsByID;
+  private final ImmutableMap<Integer, PlayerView> playersByUser;
+  private final ImmutableSet<Integer> adminIDs;
+
+  /**
+   * A team as it was when the snapshot was taken.
+   */
+  public static final class TeamView {
+    private final int id;
+    private final String codename;
+    private final boolean alive;
+    private final String joinCode;
+    private final ImmutableList<PlayerView> players;
+    private final ImmutableList<Integer> targetIDs;
+
+    TeamView(int id, String codename, boolean alive, String joinCode, List<PlayerView> players,
+        List<Integer> targetIDs) {
+      this.id = id;
+      this.codename = codename;
+      this.alive = alive;
+      this.joinCode = joinCode;
+      this.players = ImmutableList.copyOf(players);
+      this.targetIDs = ImmutableList.copyOf(targetIDs);
+    }
+
+    /**
+     * @return ID of this team
+     */
+    public int getID() {
+      return id;
+    }
+
+    /**
+     * @return the Team this is a view of
+     */
+    public Team getTeam() {
+      return new Team(id);
+    }
+
+    /**
+     * @return Codename of this team
+     */
+    public String getCodename() {
+      return codename;
+    }
+
+    /**
+     * @return Whether this team is alive
+     */
+    public boolean isAlive() {
+      return alive;
+    }
+
+    /**
+     * @return Join code of this team
+     */
+    public String getJoinCode() {
+      return joinCode;
+    }
+
+    /**
+     * @return Players on this team, in the order they joined
+     */
+    public List<PlayerView> getPlayers() {
+      return players;
+    }
+
+    /**
+     * @return Players on this team who are alive
+     */
+    public List<PlayerView> getAlivePlayers() {
+      List<PlayerView> alivePlayers = new ArrayList<>();
+      for (PlayerView player : players) {
+        if (player.isAlive()) {
+          alivePlayers.add(player);
+        }
+      }
+      return alivePlayers;
+    }
+  }
+
+  /**
+   * A player as it was when the snapshot was taken.
+   */
+  public static final class PlayerView {
+    private final int id;
+    private final int userID;
+    private final int teamID;
+    private final String name;
+    private final boolean alive;
+    private final String killCode;
+
+    PlayerView(int id, int userID, int teamID, String name, boolean alive, String killCode) {
+      this.id = id;
+      this.userID = userID;
+      this.teamID = teamID;
+      this.name = name;
+      this.alive = alive;
+      this.killCode = killCode;
+    }
+
+    /**
+     * @return ID of this player
+     */
+    public int getID() {
+      return id;
+    }
+
+    /**
+     * @return the Player this is a view of
+     */
+    public Player getPlayer() {
+      return new Player(id);
+    }
+
+    /**
+     * @return ID of the user playing as this player
+     */
+    public int getUserID() {
+      return userID;
+    }
+
+    /**
+     * @return Name of the user playing as this player
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return Whether this player is alive
+     */
+    public boolean isAlive() {
+      return alive;
+    }
+
+    /**
+     * @return Kill code of this player
+     */
+    public String getKillCode() {
+      return killCode;
+    }
+  }
+
+  GameSnapshot(Game game, String name, String rules, GameStatus status, int maxTeamSize,
+      int numTargets, boolean anonymous, String joinCode, Instant createdTime,
+      List<TeamView> teams, Map<Integer, PlayerView> playersByUser, Set<Integer> adminIDs) {
+    this.game = game;
+    this.name = name;
+    this.rules = rules;
+    this.status = status;
+    this.maxTeamSize = maxTeamSize;
+    this.numTargets = numTargets;
+    this.anonymous = anonymous;
+    this.joinCode = joinCode;
+    this.createdTime = createdTime;
+    this.teams = ImmutableList.copyOf(teams);
+    ImmutableMap.Builder<Integer, TeamView> byID = ImmutableMap.builder();
+    for (TeamView team : teams) {
+      byID.put(team.getID(), team);
+    }
+    this.teamsByID = byID.build();
+    this.playersByUser = ImmutableMap.copyOf(playersByUser);
+    this.adminIDs = ImmutableSet.copyOf(adminIDs);
+  }
+
+  /**
+   * @return game ID
+   */
+  public int getID() {
+    return game.getID();
+  }
+
+  /**
+   * @return the Game this is a snapshot of
+   */
+  public Game getGame() {
+    return game;
+  }
+
+  /**
+   * @return Game name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return Game rules
+   */
+  public String getRules() {
+    return rules;
+  }
+
+  /**
+   * @return Game status (forming, playing, done)
+   */
+  public GameStatus getStatus() {
+    return status;
+  }
+
+  /**
+   * @return Maximum size of teams in this game
+   */
+  public int getMaxTeamSize() {
+    return maxTeamSize;
+  }
+
+  /**
+   * @return Number of targets each team has in this game
+   */
+  public int getNumTargets() {
+    return numTargets;
+  }
+
+  /**
+   * @return Whether this game is anonymous
+   */
+  public boolean isAnonymous() {
+    return anonymous;
+  }
+
+  /**
+   * @return Game join code
+   */
+  public String getJoinCode() {
+    return joinCode;
+  }
+
+  /**
+   * @return Time this game was created
+   */
+  public Instant getCreatedTime() {
+    return createdTime;
+  }
+
+  /**
+   * @return Teams playing this game, in the order they were created
+   */
+  public List<TeamView> getTeams() {
+    return teams;
+  }
+
+  /**
+   * @return Teams playing this game who are still alive
+   */
+  public List<TeamView> getAliveTeams() {
+    List<TeamView> aliveTeams = new ArrayList<>();
+    for (TeamView team : teams) {
+      if (team.isAlive()) {
+        aliveTeams.add(team);
+      }
+    }
+    return aliveTeams;
+  }
+
+  /**
+   * @param id ID of a team
+   * @return the team with this ID, or null if it is not in this game
+   */
+  public TeamView getTeam(int id) {
+    return teamsByID.get(id);
+  }
+
+  /**
+   * @param user a user
+   * @return the user's player in this game, or null if they are not playing
+   */
+  public PlayerView getPlayer(User user) {
+    return playersByUser.get(user.getID());
+  }
+
+  /**
+   * @param player a player in this game
+   * @return the player's team, or null if it is not in this snapshot
+   */
+  public TeamView getTeamOf(PlayerView player) {
+    return teamsByID.get(player.teamID);
+  }
+
+  /**
+   * @param user a user
+   * @return whether the user is an admin of this game
+   */
+  public boolean isAdmin(User user) {
+    return adminIDs.contains(user.getID());
+  }
+
+  /**
+   * Target list to be used by the GUI, like Team.getDisplayedTargets.
+   *
+   * @param team a team in this game
+   * @return Teams this team is targeting, with no repeats and excluding
+   *         self-targets
+   */
+  public List<TeamView> getDisplayedTargets(TeamView team) {
+    Set<Integer> targetIDs = new LinkedHashSet<>(team.targetIDs);
+    targetIDs.remove(team.getID());
+    List<TeamView> targets = new ArrayList<>();
+    for (int id : targetIDs) {
+      TeamView target = teamsByID.get(id);
+      if (target != null) {
+        targets.add(target);
+      }
+    }
+    return targets;
+  }
+}
@@ -0,0 +1,118 @@
+package edu.brown.cs.assassin.game;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.brown.cs.assassin.database.DBRegistry;
+import edu.brown.cs.assassin.exception.DBAccessException;
+
+/**
+ * In-memory version stamps that tell whether anything shown on a game's page
+ * may have changed, without touching the database. Every method that changes
+ * a game, its teams, players, targets or messages bumps the game's version.
+ * Changes that can show up in the list of a user's games (adding, renaming,
+ * starting or ending a game, or joining or leaving one) also bump the game
+ * list version, which every game page depends on.
+ *
+ * <p>
+ * Versions start over when the server restarts, so they are only meaningful
+ * together with the start time. A change inside a transaction bumps the
+ * version both when it is made and when the transaction commits, so a page
+ * read in between is never stamped with the final version.
+ */
+public final class GameVersions {
+  private static final Instant STARTED = Instant.now();
+  private static final Map<Integer, Stamp> GAMES = new ConcurrentHashMap<>();
+  private static volatile Stamp gameLists = new Stamp(0, STARTED);
+
+  private GameVersions() {
+  }
+
+  /**
+   * A version and the time it was reached.
+   */
+  private static final class Stamp {
+    private final long version;
+    private final Instant time;
+
+    Stamp(long version, Instant time) {
+      this.version = version;
+      this.time = time;
+    }
+
+    Stamp next() {
+      return new Stamp(version + 1, Instant.now());
+    }
+  }
+
+  /**
+   * @return the time the versions started from
+   */
+  public static Instant getStartTime() {
+    return STARTED;
+  }
+
+  /**
+   * @param gameID ID of a game
+   * @return the game's version, 0 if it has not changed since the server
+   *         started
+   */
+  public static long getVersion(int gameID) {
+    Stamp stamp = GAMES.get(gameID);
+    return stamp == null ? 0 : stamp.version;
+  }
+
+  /**
+   * @return the game list version, 0 if no game list has changed since the
+   *         server started
+   */
+  public static long getGameListVersion() {
+    return gameLists.version;
+  }
+
+  /**
+   * @param gameID ID of a game
+   * @return the last time the game or the game lists changed, or the start
+   *         time if neither has changed since
+   */
+  public static Instant getLastModified(int gameID) {
+    Stamp stamp = GAMES.get(gameID);
+    Instant game = stamp == null ? STARTED : stamp.time;
+    Instant lists = gameLists.time;
+    return game.isAfter(lists) ? game : lists;
+  }
+
+  /**
+   * Records that something on a game's page has changed.
+   *
+   * @param game the game
+   * @throws DBAccessException if the database cannot be opened
+   */
+  static void changed(Game game) throws DBAccessException {
+    int gameID = game.getID();
+    bump(gameID);
+    DBRegistry.getGameDB().afterCommit(() -> bump(gameID));
+  }
+
+  /**
+   * Records that a game has changed in a way that shows in users' game lists.
+   *
+   * @param game the game
+   * @throws DBAccessException if the database cannot be opened
+   */
+  static void gameListChanged(Game game) throws DBAccessException {
+    changed(game);
+    bumpGameLists();
+    DBRegistry.getGameDB().afterCommit(GameVersions::bumpGameLists);
+  }
+
+  private static void bump(int gameID) {
+    GAMES.compute(gameID, (id, stamp) -> stamp == null ? new Stamp(1, Instant.now())
+        : stamp.next());
+  }
+
+  private static synchronized void bumpGameLists() {
+    gameLists = gameLists.next();
+  }
+}
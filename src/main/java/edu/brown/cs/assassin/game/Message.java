@@ -1,26 +1,35 @@
 package edu.brown.cs.assassin.game;
 
+import edu.brown.cs.assassin.database.CachedRow;
 import edu.brown.cs.assassin.database.DBMethods;
 import edu.brown.cs.assassin.database.DBProxy;
+import edu.brown.cs.assassin.database.DBRegistry;
 import edu.brown.cs.assassin.exception.DBAccessException;
 import edu.brown.cs.assassin.exception.InvalidAccessException;
 
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
+import com.google.common.collect.ImmutableMap;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
-import static edu.brown.cs.assassin.main.AssassinConstants.GAME_DATA_PATH;
-import static edu.brown.cs.assassin.main.AssassinConstants.GAME_TEST_DATA_PATH;
-
 /**
  * Represents a message within the context of a game.
  */
 public class Message implements Identifiable {
-  private static DBProxy db;
   private int id;
+  // Set only for messages loaded along with their contents, which then never
+  // query the database
+  private boolean loaded;
+  private int gameID;
+  private Instant time;
+  private MessageType type;
+  private Map<Integer, String> fields;
   private static BiMap<String, MessageType> types;
 
   static {
@@ -44,25 +53,11 @@ public class Message implements Identifiable {
   // DATABASE CONNECTIONS ======================================================
 
   /**
-   * Connects to the database used for storing actual user data.
-   */
-  public static void connectToMainDB() {
-    try {
-      db = new DBProxy(GAME_DATA_PATH);
-    } catch (DBAccessException e) {
-      System.err.println("Error connecting to database: " + e.getMessage());
-    }
-  }
-
-  /**
-   * Connects to the database used for storing test message data.
+   * @return the game database, from the registry
+   * @throws DBAccessException if the database cannot be opened
    */
-  public static void connectToTestDB() {
-    try {
-      db = new DBProxy(GAME_TEST_DATA_PATH);
-    } catch (DBAccessException e) {
-      System.err.println("Error connecting to database: " + e.getMessage());
-    }
+  private static DBProxy db() throws DBAccessException {
+    return DBRegistry.getGameDB();
   }
 
   // CONSTRUCTOR ===============================================================
@@ -76,6 +71,24 @@ public class Message implements Identifiable {
     this.id = id;
   }
 
+  /**
+   * Constructor for a message whose contents are already known.
+   *
+   * @param id     the unique id of this message
+   * @param gameID the ID of the game in which this message was sent
+   * @param time   the time this message was sent
+   * @param type   the type of this message
+   * @param fields the content fields of this message, by index
+   */
+  Message(int id, int gameID, Instant time, MessageType type, Map<Integer, String> fields) {
+    this(id);
+    this.loaded = true;
+    this.gameID = gameID;
+    this.time = time;
+    this.type = type;
+    this.fields = ImmutableMap.copyOf(fields);
+  }
+
   // GETTER METHODS ============================================================
 
   /**
@@ -86,15 +99,29 @@ public class Message implements Identifiable {
     return id;
   }
 
+  /**
+   * @return ID of the game in which this message was sent
+   * @throws DBAccessException if something goes wrong with the database
+   */
+  public int getGameID() throws DBAccessException {
+    if (loaded) {
+      return gameID;
+    }
+    return db().queryFirst("select game from message where id = ?",
+            DBMethods.parameters(id), row -> row.getInt(0));
+  }
+
   /**
    * @return Time this message was sent
    * @throws DBAccessException if something goes wrong with the database
    */
   public Instant getTime() throws DBAccessException {
-    String timeString = db
-            .executeQuery("select time from message where id = ?", DBMethods.parameters(id)).get(0)
-            .get(0);
-    return DBMethods.convertTime(timeString);
+    if (loaded) {
+      return time;
+    }
+    long time = db().queryFirst("select time from message where id = ?",
+            DBMethods.parameters(id), row -> row.getLong(0));
+    return Instant.ofEpochSecond(time);
   }
 
   /**
@@ -102,9 +129,11 @@ public class Message implements Identifiable {
    * @throws DBAccessException if something goes wrong with the database
    */
   public MessageType getType() throws DBAccessException {
-    String typeString = db.executeQuery(
-            "select type from message where id = ?", DBMethods.parameters(id))
-            .get(0).get(0);
+    if (loaded) {
+      return type;
+    }
+    String typeString = db().queryFirst("select type from message where id = ?",
+            DBMethods.parameters(id), row -> row.getString(0));
     return convertType(typeString);
   }
 
@@ -114,11 +143,7 @@ public class Message implements Identifiable {
    * @throws InvalidAccessException if the database contains an invalid game ID
    */
   public Game getGame() throws DBAccessException, InvalidAccessException {
-    String gameIDString = db.executeQuery(
-            "select game from message where id = ?", DBMethods.parameters(id))
-            .get(0).get(0);
-    int gameID = Integer.parseInt(gameIDString);
-    return Game.fromID(gameID);
+    return Game.fromID(getGameID());
   }
 
   /**
@@ -130,13 +155,19 @@ public class Message implements Identifiable {
    * @throws InvalidAccessException if there is no field with this ID and index
    */
   public String getField(int index) throws DBAccessException, InvalidAccessException {
-    List<List<String>> queryResult = db.executeQuery(
+    if (loaded) {
+      if (!fields.containsKey(index)) {
+        throw new InvalidAccessException("No such message field.");
+      }
+      return fields.get(index);
+    }
+    List<String> queryResult = db().query(
             "select content from message_field where message = ? and field_index = ?",
-            DBMethods.parameters(id, index));
+            DBMethods.parameters(id, index), row -> row.getString(0));
     if (queryResult.isEmpty()) {
       throw new InvalidAccessException("No such message field.");
     }
-    return queryResult.get(0).get(0);
+    return queryResult.get(0);
   }
 
   // CREATING/FINDING MESSAGES =================================================
@@ -155,20 +186,112 @@ public class Message implements Identifiable {
     String messageCommand = "insert into message (game, time, type) values (?, ?, ?)";
     List<String> messageParameters = DBMethods.parameters(game, DBMethods.timeString(),
             convertType(type));
-    db.updateDatabase(messageCommand, messageParameters);
+    int addedMessageID = db().insert(messageCommand, messageParameters);
 
-    List<List<String>> addedMessageQueryResult = db.executeQuery(
-            "select last_insert_rowid() from message");
-    int addedMessageID = Integer.parseInt(addedMessageQueryResult.get(0).get(0));
+    // Inside a kill's transaction the batch joins it rather than committing
+    String fieldCommand = "insert into message_field "
+            + "(message, field_index, content) values (?, ?, ?)";
+    List<List<String>> fieldRows = new ArrayList<>();
+    for (int i = 0; i < fields.length; i++) {
+      fieldRows.add(DBMethods.parameters(addedMessageID, i, fields[i]));
+    }
+    db().updateBatch(fieldCommand, fieldRows);
 
-    String fieldCommand = String.format("insert into message_field "
-                    + "(message, field_index, content) values (%d, ?, ?)", addedMessageID);
+    Map<Integer, String> fieldMap = new LinkedHashMap<>();
     for (int i = 0; i < fields.length; i++) {
-      List<String> fieldParameters = DBMethods.parameters(i, fields[i]);
-      db.updateDatabase(fieldCommand, fieldParameters);
+      fieldMap.put(i, fields[i]);
     }
+    Message added = new Message(addedMessageID, game.getID(),
+        DBMethods.convertTime(messageParameters.get(1)), type, fieldMap);
+    GameVersions.changed(game);
+    // A message added as part of a rolled back transaction was never sent
+    GameEvents.messageAdded(added);
+    return added;
+  }
 
-    return new Message(addedMessageID);
+  /**
+   * Loads the latest messages sent in a game, along with their contents, in
+   * one query. The messages returned never need to query the database.
+   *
+   * @param game  the game
+   * @param count the maximum number of messages to load
+   * @return the latest messages, most recent first
+   * @throws DBAccessException if something goes wrong with the database
+   */
+  static List<Message> loadLatest(Game game, int count) throws DBAccessException {
+    return loadPage(game, "select id, time, type from message where game = ? "
+        + "order by id desc limit ?", DBMethods.parameters(game, count));
+  }
+
+  /**
+   * Loads the messages sent in a game before a given message, along with their
+   * contents, in one query.
+   *
+   * @param game     the game
+   * @param beforeID the ID of a message; only earlier messages are loaded
+   * @param count    the maximum number of messages to load
+   * @return the latest messages before the given one, most recent first
+   * @throws DBAccessException if something goes wrong with the database
+   */
+  static List<Message> loadBefore(Game game, int beforeID, int count)
+      throws DBAccessException {
+    return loadPage(game, "select id, time, type from message where game = ? and id < ? "
+        + "order by id desc limit ?", DBMethods.parameters(game, beforeID, count));
+  }
+
+  /**
+   * Loads the messages sent in a game after a given message, along with their
+   * contents, in one query.
+   *
+   * @param game    the game
+   * @param afterID the ID of a message; only later messages are loaded
+   * @param count   the maximum number of messages to load
+   * @return the earliest messages after the given one, most recent first
+   * @throws DBAccessException if something goes wrong with the database
+   */
+  static List<Message> loadAfter(Game game, int afterID, int count) throws DBAccessException {
+    return loadPage(game, "select id, time, type from message where game = ? and id > ? "
+        + "order by id limit ?", DBMethods.parameters(game, afterID, count));
+  }
+
+  /**
+   * Loads the messages picked by a query on the message table, joined with
+   * their fields.
+   *
+   * @param game       the game the messages were sent in
+   * @param page       a query for the id, time and type of the messages
+   * @param parameters the parameters of the query
+   * @return the messages, most recent first
+   * @throws DBAccessException if something goes wrong with the database
+   */
+  private static List<Message> loadPage(Game game, String page, List<String> parameters)
+      throws DBAccessException {
+    String query = "select message.id, message.time, message.type, "
+        + "message_field.field_index, message_field.content "
+        + "from (" + page + ") "
+        + "as message left join message_field on message_field.message = message.id "
+        + "order by message.id desc, message_field.field_index";
+    List<CachedRow> rows = db().query(query, parameters, CachedRow::new);
+
+    // Rows come grouped by message, one row per field (or one row with null
+    // field columns for a message with no fields)
+    List<Message> messages = new ArrayList<>();
+    Map<Integer, String> fields = new LinkedHashMap<>();
+    for (int i = 0; i < rows.size(); i++) {
+      CachedRow row = rows.get(i);
+      if (row.getString("field_index") != null) {
+        fields.put(row.getInt("field_index"), row.getString("content"));
+      }
+      boolean lastRowOfMessage = i == rows.size() - 1
+          || rows.get(i + 1).getInt("id") != row.getInt("id");
+      if (lastRowOfMessage) {
+        messages.add(new Message(row.getInt("id"), game.getID(),
+            Instant.ofEpochSecond(row.getLong("time")), convertType(row.getString("type")),
+            fields));
+        fields.clear();
+      }
+    }
+    return messages;
   }
 
   /**
@@ -180,7 +303,7 @@ public class Message implements Identifiable {
    * @throws InvalidAccessException if there is no message with this ID
    */
   public static Message fromID(int id) throws DBAccessException, InvalidAccessException {
-    if (db.hasKey("select * from message where id = ?", DBMethods.parameters(id))) {
+    if (db().hasKey("select * from message where id = ?", DBMethods.parameters(id))) {
       return new Message(id);
     } else {
       throw new InvalidAccessException("There is no message with id " + id);
@@ -1,16 +1,15 @@
 package edu.brown.cs.assassin.game;
 
-import static edu.brown.cs.assassin.main.AssassinConstants.GAME_DATA_PATH;
-import static edu.brown.cs.assassin.main.AssassinConstants.GAME_TEST_DATA_PATH;
-
 import java.time.Instant;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
+import edu.brown.cs.assassin.database.CachedRow;
 import edu.brown.cs.assassin.database.DBMethods;
 import edu.brown.cs.assassin.database.DBProxy;
-import edu.brown.cs.assassin.email.EmailSender;
+import edu.brown.cs.assassin.database.DBRegistry;
+import edu.brown.cs.assassin.database.RowCache;
 import edu.brown.cs.assassin.exception.DBAccessException;
 import edu.brown.cs.assassin.exception.InvalidAccessException;
 import edu.brown.cs.assassin.exception.InvalidActionException;
@@ -19,31 +18,42 @@ import edu.brown.cs.assassin.exception.InvalidActionException;
  * Represents a player within the context of a single game.
  */
 public class Player implements Identifiable {
-  private static DBProxy db;
   private int id;
 
   // DATABASE CONNECTIONS ======================================================
 
   /**
-   * Connects to the database used for storing actual player data.
+   * @return the game database, from the registry
+   * @throws DBAccessException if the database cannot be opened
    */
-  public static void connectToMainDB() {
-    try {
-      db = new DBProxy(GAME_DATA_PATH);
-    } catch (DBAccessException e) {
-      System.err.println("Error connecting to database: " + e.getMessage());
-    }
+  private static DBProxy db() throws DBAccessException {
+    return DBRegistry.getGameDB();
   }
 
   /**
-   * Connects to the database used for storing test player data.
+   * @return the cache of player rows, e.g. for its hit rate
+   * @throws DBAccessException if the database cannot be opened
    */
-  public static void connectToTestDB() {
-    try {
-      db = new DBProxy(GAME_TEST_DATA_PATH);
-    } catch (DBAccessException e) {
-      System.err.println("Error connecting to database: " + e.getMessage());
+  public static RowCache getRowCache() throws DBAccessException {
+    return db().getRowCache("select * from player where id = ?");
+  }
+
+  /**
+   * Drops every player's row from the cache, after an update that changed
+   * many players at once.
+   *
+   * @throws DBAccessException if the database cannot be opened
+   */
+  static void invalidateAll() throws DBAccessException {
+    getRowCache().invalidateAll();
+  }
+
+  private CachedRow row() throws DBAccessException {
+    CachedRow row = getRowCache().get(id);
+    if (row == null) {
+      throw new DBAccessException("There is no player with id " + id);
     }
+    return row;
   }
 
   // CONSTRUCTOR ===============================================================
@@ -73,11 +83,7 @@ public class Player implements Identifiable {
    * @throws InvalidAccessException if the database contains an invalid user ID
    */
   public User getUser() throws DBAccessException, InvalidAccessException {
-    String userIDString = db
-        .executeQuery("select user from player where id = ?", DBMethods.parameters(id)).get(0)
-        .get(0);
-    int userID = Integer.parseInt(userIDString);
-    return User.fromID(userID);
+    return User.fromID(row().getInt("user"));
   }
 
   /**
@@ -86,11 +92,7 @@ public class Player implements Identifiable {
    * @throws InvalidAccessException if the database contains an invalid team ID
    */
   public Team getTeam() throws DBAccessException, InvalidAccessException {
-    String userIDString = db
-        .executeQuery("select team from player where id = ?", DBMethods.parameters(id)).get(0)
-        .get(0);
-    int userID = Integer.parseInt(userIDString);
-    return Team.fromID(userID);
+    return Team.fromID(row().getInt("team"));
   }
 
   /**
@@ -98,10 +100,7 @@ public class Player implements Identifiable {
    * @throws DBAccessException if something goes wrong with the database
    */
   public Instant getJoinedTeamTime() throws DBAccessException {
-    String joinedString = db
-        .executeQuery("select joined_team from player where id = ?", DBMethods.parameters(id))
-        .get(0).get(0);
-    return DBMethods.convertTime(joinedString);
+    return Instant.ofEpochSecond(row().getLong("joined_team"));
   }
 
   /**
@@ -109,10 +108,7 @@ public class Player implements Identifiable {
    * @throws DBAccessException if something goes wrong with the database
    */
   public boolean isAlive() throws DBAccessException {
-    String aliveString = db
-        .executeQuery("select alive from player where id = ?", DBMethods.parameters(id)).get(0)
-        .get(0);
-    return (aliveString.equals("1"));
+    return row().getBoolean("alive");
   }
 
   /**
@@ -121,11 +117,7 @@ public class Player implements Identifiable {
    * @throws InvalidAccessException if the database contains an invalid game ID
    */
   public Game getGame() throws DBAccessException, InvalidAccessException {
-    String gameIDString = db.executeQuery(
-        "select team.game from player, team where " + "player.id = ? and player.team = team.id",
-        DBMethods.parameters(id)).get(0).get(0);
-    int gameID = Integer.parseInt(gameIDString);
-    return Game.fromID(gameID);
+    return getTeam().getGame();
   }
 
   /**
@@ -133,8 +125,7 @@ public class Player implements Identifiable {
    * @throws DBAccessException if something goes wrong with the database
    */
   public String getKillCode() throws DBAccessException {
-    return db.executeQuery("select kill_code from player where id = ?", DBMethods.parameters(id))
-        .get(0).get(0);
+    return row().getString("kill_code");
   }
 
   // PLAYER ACTIONS ============================================================
@@ -151,25 +142,30 @@ public class Player implements Identifiable {
       throw new InvalidActionException("Cannot remove players once the game " + "has started.");
     }
     Team team = getTeam();
-    db.updateDatabase("delete from player where id = ?", DBMethods.parameters(id));
+    Game game = team.getGame();
+    db().updateDatabase("delete from player where id = ?", DBMethods.parameters(id));
+    getRowCache().invalidate(id);
     if (team.getPlayers().isEmpty()) {
-      db.updateDatabase("delete from team where id = ?", DBMethods.parameters(team));
+      db().updateDatabase("delete from team where id = ?", DBMethods.parameters(team));
+      Team.invalidate(team);
     }
+    GameVersions.gameListChanged(game);
   }
 
   /**
-   * Sends an email containing subject and text to this player..
+   * Sends an email containing subject and text to this player, in the
+   * background.
    *
    * @param subject Subject of the email.
    * @param text    Body of the email, which can be formatted like html.
-   * @return Whether the email sent properly.
+   * @return Whether the email was queued to be sent.
    * @throws DBAccessException      if something goes wrong with the database
    * @throws InvalidAccessException if the database contains an invalid user ID
    */
   public boolean email(String subject, String text)
       throws InvalidAccessException, DBAccessException {
     List<String> emailList = Collections.singletonList(getUser().getEmail());
-    return EmailSender.send(emailList, subject, text);
+    return GameEmails.send(emailList, subject, text);
   }
 
   // KILL HANDLING =============================================================
@@ -279,7 +275,9 @@ public class Player implements Identifiable {
   }
 
   /**
-   * Kills a target player. (Does not check whether the kill is allowed.)
+   * Kills a target player. (Does not check whether the kill is allowed.) The
+   * kill, any elimination and new targets that follow from it, and the
+   * messages it produces are all written in one transaction.
    *
    * @param target Player being killed
    * @return Information about the kill
@@ -289,8 +287,15 @@ public class Player implements Identifiable {
    */
   public KillResult kill(Player target)
       throws DBAccessException, InvalidAccessException, InvalidActionException {
+    return db().inTransaction(() -> recordKill(target));
+  }
+
+  private KillResult recordKill(Player target)
+      throws DBAccessException, InvalidAccessException, InvalidActionException {
     // Mark the player as killed
-    db.updateDatabase("update player set alive = 0 where id = ?", DBMethods.parameters(target));
+    db().updateDatabase("update player set alive = 0 where id = ?", DBMethods.parameters(target));
+    getRowCache().invalidate(target.getID());
+    GameVersions.changed(getGame());
 
     // Eliminate their team if there are no living players left
     // (Also adds new targets)
@@ -306,7 +311,7 @@ public class Player implements Identifiable {
         + "values (?, ?, ?, ?)";
     List<String> killParameters = DBMethods.parameters(id, target, DBMethods.timeString(),
         eliminatedTeam);
-    db.updateDatabase(killCommand, killParameters);
+    db().updateDatabase(killCommand, killParameters);
 
     // If the team was eliminated, record that in a message
     if (eliminatedTeam == 1) {
@@ -329,7 +334,8 @@ public class Player implements Identifiable {
   }
 
   /**
-   * Allows a player to surrender.
+   * Allows a player to surrender. Like a kill, the surrender and everything it
+   * causes are written in one transaction.
    *
    * @return a KillResult with details of the surrender.
    * @throws DBAccessException      if something goes wrong in the database.
@@ -338,10 +344,17 @@ public class Player implements Identifiable {
    */
   public KillResult surrender()
       throws DBAccessException, InvalidAccessException, InvalidActionException {
+    return db().inTransaction(this::recordSurrender);
+  }
+
+  private KillResult recordSurrender()
+      throws DBAccessException, InvalidAccessException, InvalidActionException {
     if (!isAlive()) {
       return new KillResult(this, "You cannot surrender if you are dead.");
     }
-    db.updateDatabase("update player set alive = 0 where id = ?", DBMethods.parameters(this));
+    db().updateDatabase("update player set alive = 0 where id = ?", DBMethods.parameters(this));
+    getRowCache().invalidate(id);
+    GameVersions.changed(getGame());
     int eliminatedTeam = 0;
     Team team = getTeam();
     if (team.getAlivePlayers().isEmpty()) {
@@ -370,7 +383,9 @@ public class Player implements Identifiable {
   /**
    * If the kill code matches that of any player this player is targeting, and
    * this player is able to kill them (i.e. they are both alive and not the same),
-   * execute the kill and return the killed player. If not, return null.
+   * execute the kill and return the killed player. If not, return null. The
+   * checks run in the same transaction as the kill, so two players cannot
+   * both kill the same target.
    *
    * @param killCode Kill code input
    * @return Information about the kill
@@ -380,6 +395,11 @@ public class Player implements Identifiable {
    */
   public KillResult killByCode(String killCode)
       throws DBAccessException, InvalidAccessException, InvalidActionException {
+    return db().inTransaction(() -> checkAndKill(killCode));
+  }
+
+  private KillResult checkAndKill(String killCode)
+      throws DBAccessException, InvalidAccessException, InvalidActionException {
     if (!isAlive()) {
       return new KillResult(this, "You cannot kill a player if you are dead.");
     }
@@ -388,7 +408,7 @@ public class Player implements Identifiable {
         + "killer.id = ? and killer.team = target.killer "
         + "and target_player.team = target.target and target_player.kill_code = ?";
     List<String> parameters = DBMethods.parameters(id, killCode);
-    if (db.hasKey(query, parameters)) {
+    if (db().hasKey(query, parameters)) {
       Player target = fromKillCode(killCode);
       if (equals(target)) {
         return new KillResult(this, "You cannot kill yourself.");
@@ -423,13 +443,10 @@ public class Player implements Identifiable {
 
     String command = "insert into player (user, team, kill_code, joined_team)"
         + " values (?, ?, ?, ?)";
-    String code = DBMethods.generateUniqueCode(db, "player", "kill_code");
+    String code = DBMethods.generateUniqueCode();
     List<String> parameters = DBMethods.parameters(user, team, code, DBMethods.timeString());
-    db.updateDatabase(command, parameters);
-
-    List<List<String>> addedPlayerQueryResult = db
-        .executeQuery("select last_insert_rowid() from player");
-    int addedPlayerID = Integer.parseInt(addedPlayerQueryResult.get(0).get(0));
+    int addedPlayerID = db().insert(command, parameters);
+    GameVersions.gameListChanged(team.getGame());
     return new Player(addedPlayerID);
   }
 
@@ -442,7 +459,7 @@ public class Player implements Identifiable {
    * @throws InvalidAccessException if there is no player with this ID
    */
   public static Player fromID(int id) throws DBAccessException, InvalidAccessException {
-    if (db.hasKey("select * from player where id = ?", DBMethods.parameters(id))) {
+    if (getRowCache().get(id) != null) {
       return new Player(id);
     } else {
       throw new InvalidAccessException("There is no player with id " + id);
@@ -463,12 +480,11 @@ public class Player implements Identifiable {
     String query = "select player.id from player, team where "
         + "player.user = ? and player.team = team.id and team.game = ?";
     List<String> parameters = DBMethods.parameters(user, game);
-    List<List<String>> playerStrings = db.executeQuery(query, parameters);
-    if (playerStrings.isEmpty()) {
+    Player player = db().queryFirst(query, parameters, row -> new Player(row.getInt(0)));
+    if (player == null) {
       throw new InvalidAccessException("This user does not play in this game.");
-    } else {
-      return new Player(Integer.parseInt(playerStrings.get(0).get(0)));
     }
+    return player;
   }
 
   /**
@@ -482,12 +498,11 @@ public class Player implements Identifiable {
   public static Player fromKillCode(String code) throws DBAccessException, InvalidAccessException {
     String query = "select id from player where kill_code = ?";
     List<String> parameters = DBMethods.parameters(code);
-    List<List<String>> playerStrings = db.executeQuery(query, parameters);
-    if (playerStrings.isEmpty()) {
+    Player player = db().queryFirst(query, parameters, row -> new Player(row.getInt(0)));
+    if (player == null) {
       throw new InvalidAccessException("There is no player with that kill code.");
-    } else {
-      return new Player(Integer.parseInt(playerStrings.get(0).get(0)));
     }
+    return player;
   }
 
   // OVERRIDE METHODS ==========================================================
@@ -0,0 +1,34 @@
+package edu.brown.cs.assassin.game;
+
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * What a team is shown about one of its targets: the target team's codename
+ * and, unless the game is anonymous, the names of its living players.
+ */
+public final class TargetView {
+  private final String codename;
+  private final ImmutableList<String> playerNames;
+
+  TargetView(String codename, List<String> playerNames) {
+    this.codename = codename;
+    this.playerNames = ImmutableList.copyOf(playerNames);
+  }
+
+  /**
+   * @return Codename of the target team
+   */
+  public String getCodename() {
+    return codename;
+  }
+
+  /**
+   * @return Names of the target team's living players, in the order they
+   *         joined, or an empty list if the game is anonymous
+   */
+  public List<String> getPlayerNames() {
+    return playerNames;
+  }
+}
@@ -1,51 +1,65 @@
 package edu.brown.cs.assassin.game;
 
-import static edu.brown.cs.assassin.main.AssassinConstants.GAME_DATA_PATH;
-import static edu.brown.cs.assassin.main.AssassinConstants.GAME_TEST_DATA_PATH;
-
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
+import edu.brown.cs.assassin.database.CachedRow;
 import edu.brown.cs.assassin.database.DBMethods;
 import edu.brown.cs.assassin.exception.DBAccessException;
 import edu.brown.cs.assassin.database.DBProxy;
-import edu.brown.cs.assassin.email.EmailSender;
+import edu.brown.cs.assassin.database.DBRegistry;
+import edu.brown.cs.assassin.database.RowCache;
 import edu.brown.cs.assassin.exception.InvalidAccessException;
 import edu.brown.cs.assassin.exception.InvalidActionException;
+import edu.brown.cs.assassin.graph.Target;
 
 /**
  * Represents a team. Can be composed of multiple individual players/users
  */
 public class Team implements Identifiable {
-  private static DBProxy db;
   private int id;
 
   // DATABASE CONNECTIONS ======================================================
 
   /**
-   * Connects to the database used for storing actual team data.
+   * @return the game database, from the registry
+   * @throws DBAccessException if the database cannot be opened
    */
-  public static void connectToMainDB() {
-    try {
-      db = new DBProxy(GAME_DATA_PATH);
-    } catch (DBAccessException e) {
-      System.err.println("Error connecting to database: " + e.getMessage());
-    }
+  private static DBProxy db() throws DBAccessException {
+    return DBRegistry.getGameDB();
   }
 
   /**
-   * Connects to the database used for storing test team data.
+   * @return the cache of team rows, e.g. for its hit rate
+   * @throws DBAccessException if the database cannot be opened
    */
-  public static void connectToTestDB() {
-    try {
-      db = new DBProxy(GAME_TEST_DATA_PATH);
-    } catch (DBAccessException e) {
-      System.err.println("Error connecting to database: " + e.getMessage());
+  public static RowCache getRowCache() throws DBAccessException {
+    return db().getRowCache("select * from team where id = ?");
+  }
+
+  /**
+   * Drops a team's row from the cache after it was changed or deleted.
+   *
+   * @param team the team
+   * @throws DBAccessException if the database cannot be opened
+   */
+  static void invalidate(Team team) throws DBAccessException {
+    getRowCache().invalidate(team.getID());
+  }
+
+  private CachedRow row() throws DBAccessException {
+    CachedRow row = getRowCache().get(id);
+    if (row == null) {
+      throw new DBAccessException("There is no team with id " + id);
     }
+    return row;
   }
 
   // CONSTRUCTOR ===============================================================
@@ -74,8 +88,7 @@ public class Team implements Identifiable {
    * @throws DBAccessException if something goes wrong with the database
    */
   public String getCodename() throws DBAccessException {
-    return db.executeQuery("select codename from team where id = ?", DBMethods.parameters(id))
-        .get(0).get(0);
+    return row().getString("codename");
   }
 
   /**
@@ -84,10 +97,7 @@ public class Team implements Identifiable {
    * @throws InvalidAccessException if the database contains an invalid game ID
    */
   public Game getGame() throws DBAccessException, InvalidAccessException {
-    String gameIDString = db
-        .executeQuery("select game from team where id = ?", DBMethods.parameters(id)).get(0).get(0);
-    int gameID = Integer.parseInt(gameIDString);
-    return Game.fromID(gameID);
+    return Game.fromID(row().getInt("game"));
   }
 
   /**
@@ -96,10 +106,7 @@ public class Team implements Identifiable {
    * @throws DBAccessException if something goes wrong with the database
    */
   public boolean isAlive() throws DBAccessException {
-    String aliveString = db
-        .executeQuery("select alive from team where id = ?", DBMethods.parameters(id)).get(0)
-        .get(0);
-    return (aliveString.equals("1"));
+    return row().getBoolean("alive");
   }
 
   /**
@@ -107,8 +114,7 @@ public class Team implements Identifiable {
    * @throws DBAccessException if something goes wrong with the database
    */
   public String getJoinCode() throws DBAccessException {
-    return db.executeQuery("select join_code from team where id = ?", DBMethods.parameters(id))
-        .get(0).get(0);
+    return row().getString("join_code");
   }
 
   /**
@@ -117,13 +123,8 @@ public class Team implements Identifiable {
    * @throws InvalidAccessException if the database contains an invalid player ID
    */
   public List<Player> getPlayers() throws DBAccessException, InvalidAccessException {
-    List<List<String>> playerStrings = db.executeQuery("select id from player where team = ?",
-        DBMethods.parameters(id));
-    List<Player> players = new ArrayList<>();
-    for (List<String> playerString : playerStrings) {
-      players.add(Player.fromID(Integer.parseInt(playerString.get(0))));
-    }
-    return players;
+    return db().query("select id from player where team = ?", DBMethods.parameters(id),
+        row -> new Player(row.getInt(0)));
   }
 
   /**
@@ -132,28 +133,18 @@ public class Team implements Identifiable {
    * @throws InvalidAccessException if the database contains an invalid player ID
    */
   public List<Player> getAlivePlayers() throws DBAccessException, InvalidAccessException {
-    List<List<String>> playerStrings = db.executeQuery(
-        "select id from player where team = ? and alive = 1", DBMethods.parameters(id));
-    List<Player> players = new ArrayList<>();
-    for (List<String> playerString : playerStrings) {
-      players.add(Player.fromID(Integer.parseInt(playerString.get(0))));
-    }
-    return players;
+    return db().query("select id from player where team = ? and alive = 1",
+        DBMethods.parameters(id), row -> new Player(row.getInt(0)));
   }
 
   /**
-   * @return Teams this team is targeting
+   * @return Teams this team is targeting, in the order they were added
    * @throws DBAccessException      if something goes wrong with the database
    * @throws InvalidAccessException if the database contains an invalid team ID
    */
   public List<Team> getTargets() throws DBAccessException, InvalidAccessException {
-    List<List<String>> teamStrings = db.executeQuery("select target from target where killer = ?",
-        DBMethods.parameters(id));
-    List<Team> teams = new ArrayList<>();
-    for (List<String> teamString : teamStrings) {
-      teams.add(Team.fromID(Integer.parseInt(teamString.get(0))));
-    }
-    return teams;
+    return db().query("select target from target where killer = ? order by rowid", DBMethods.parameters(id),
+        row -> new Team(row.getInt(0)));
   }
 
   /**
@@ -173,18 +164,52 @@ public class Team implements Identifiable {
   }
 
   /**
-   * @return Teams targeting this team
+   * Everything this team's players are shown about their targets, loaded with
+   * one query joining the game database with the login database. Like
+   * getDisplayedTargets, has no repeats and excludes self-targets. Player
+   * names are left out if the game is anonymous.
+   *
+   * @return this team's targets, in the order they were created
+   * @throws DBAccessException if something goes wrong with the database
+   */
+  public List<TargetView> getTargetView() throws DBAccessException {
+    String query = "select distinct team.id as team, team.codename, player.id as player, "
+        + "account.name from target join team on target.target = team.id "
+        + "join game on team.game = game.id "
+        + "left join player on player.team = team.id and player.alive = 1 "
+        + "and game.anonymous = 0 "
+        + "left join login.login as account on account.id = player.user "
+        + "where target.killer = ? and target.target != target.killer "
+        + "order by team.id, player.id";
+    List<CachedRow> rows = db().query(query, DBMethods.parameters(id), CachedRow::new);
+
+    // Rows come grouped by team, one row per living player (or one row with
+    // null player columns for a team whose players are hidden or all dead)
+    Map<Integer, String> codenames = new LinkedHashMap<>();
+    Map<Integer, List<String>> playerNames = new HashMap<>();
+    for (CachedRow row : rows) {
+      int teamID = row.getInt("team");
+      codenames.put(teamID, row.getString("codename"));
+      List<String> teamNames = playerNames.computeIfAbsent(teamID, t -> new ArrayList<>());
+      if (row.getString("player") != null) {
+        teamNames.add(row.getString("name"));
+      }
+    }
+    List<TargetView> targets = new ArrayList<>();
+    for (Map.Entry<Integer, String> team : codenames.entrySet()) {
+      targets.add(new TargetView(team.getValue(), playerNames.get(team.getKey())));
+    }
+    return targets;
+  }
+
+  /**
+   * @return Teams targeting this team, in the order they were added
    * @throws DBAccessException      if something goes wrong with the database
    * @throws InvalidAccessException if the database contains an invalid team ID
    */
   public List<Team> getTargetingTeams() throws DBAccessException, InvalidAccessException {
-    List<List<String>> teamStrings = db.executeQuery("select killer from target where target = ?",
-        DBMethods.parameters(id));
-    List<Team> teams = new ArrayList<>();
-    for (List<String> teamString : teamStrings) {
-      teams.add(Team.fromID(Integer.parseInt(teamString.get(0))));
-    }
-    return teams;
+    return db().query("select killer from target where target = ? order by rowid", DBMethods.parameters(id),
+        row -> new Team(row.getInt(0)));
   }
 
   // TEAM ACTIONS ==============================================================
@@ -205,13 +230,14 @@ public class Team implements Identifiable {
     }
 
     // Record elimination in database
-    db.updateDatabase("update team set alive = 0 where id = ?", DBMethods.parameters(id));
+    db().updateDatabase("update team set alive = 0 where id = ?", DBMethods.parameters(id));
+    getRowCache().invalidate(id);
 
     // Email the team members to tell them they were eliminated
     String emailSubject = String.format("Your team %s was eliminated!", getCodename());
     String emailText = String.format("The last remaining player, %s, was killed by team %s.",
         killedPlayer.getUser().getName(), killer.getCodename());
-    emailEveryone(emailSubject, emailText);
+    emailEveryone(emailSubject, emailText, MessageType.ELIMINATE);
 
     // Remember the teams that this team was targeting and was targeted by
     List<Team> targets = getTargets();
@@ -220,8 +246,11 @@ public class Team implements Identifiable {
     int numTargeting = targeting.size();
 
     // Remove that information from the database
-    db.updateDatabase("delete from target where killer = ?", DBMethods.parameters(id));
-    db.updateDatabase("delete from target where target = ?", DBMethods.parameters(id));
+    db().updateDatabase("delete from target where killer = ?", DBMethods.parameters(id));
+    db().updateDatabase("delete from target where target = ?", DBMethods.parameters(id));
+    Game game = getGame();
+    GameVersions.changed(game);
+    GameEvents.targetsChanged(game);
 
     /*
     Since this team has been eliminated, we do not want it to pass on itself as a target to any
@@ -294,22 +323,39 @@ public class Team implements Identifiable {
   }
 
   /**
-   * Sends an email containing subject and text to all the players in the team.
+   * Sends an email containing subject and text to all the players in the team,
+   * in the background.
    *
    * @param subject Subject of the email.
    * @param text    Body of the email, which can be formatted like html.
-   * @return Whether the email sent properly.
+   * @return Whether the email was queued to be sent.
    * @throws DBAccessException      if something goes wrong with the database
    * @throws InvalidAccessException if the database contains an invalid user ID
    */
   public boolean emailEveryone(String subject, String text)
       throws InvalidAccessException, DBAccessException {
-    List<String> recipients = new ArrayList<>();
-    for (Player player : getPlayers()) {
-      recipients.add(player.getUser().getEmail());
-    }
+    return emailEveryone(subject, text, null);
+  }
+
+  /**
+   * Sends an email to all the players in the team about an event, merged into
+   * a digest with the game's other notifications sent around the same time.
+   *
+   * @param subject Subject of the email.
+   * @param text    Body of the email, which can be formatted like html.
+   * @param event   What happened, or null to send the email without waiting.
+   * @return Whether the email was queued to be sent.
+   * @throws DBAccessException      if something goes wrong with the database
+   * @throws InvalidAccessException if the database contains an invalid user ID
+   */
+  boolean emailEveryone(String subject, String text, MessageType event)
+      throws InvalidAccessException, DBAccessException {
+    List<String> recipients = db().query("select account.email from player "
+        + "join login.login as account on account.id = player.user "
+        + "where player.team = ? order by player.id", DBMethods.parameters(id),
+        row -> row.getString(0));
     String subjectWithGame = String.format("[Game %s] %s", getGame().getName(), subject);
-    return EmailSender.send(recipients, subjectWithGame, text);
+    return GameEmails.send(getGame(), event, recipients, subjectWithGame, text);
   }
 
   // EDITING TARGETS ===========================================================
@@ -327,9 +373,47 @@ public class Team implements Identifiable {
     if (getTargets().size() >= getGame().getNumTargets()) {
       throw new InvalidActionException("This team is at the maximum number of targets.");
     }
-    db.updateDatabase("insert into target (killer, target) values (?, ?)",
+    db().updateDatabase("insert into target (killer, target) values (?, ?)",
         DBMethods.parameters(id, target));
+    Game game = getGame();
+    GameVersions.changed(game);
+    GameEvents.targetsChanged(game);
   }
+
+  /**
+   * Adds a whole set of assassin/target pairs for teams in a game, such as a
+   * newly generated target graph, in one batch. The maximum number of targets
+   * is checked for every team before anything is written, so either all the
+   * targets are added or none are.
+   *
+   * @param game    Game the teams are playing
+   * @param targets Assassin/target pairs to add
+   * @throws DBAccessException      if something goes wrong with the database
+   * @throws InvalidActionException if any team would go over the maximum number
+   *                                of targets
+   */
+  public static void addTargets(Game game, List<Target<Team>> targets)
+      throws DBAccessException, InvalidActionException {
+    int maxTargets = game.getNumTargets();
+    Map<Integer, Integer> targetCounts = new HashMap<>();
+    db().forEachRow("select target.killer, count(*) from target join team "
+        + "on target.killer = team.id where team.game = ? group by target.killer",
+        DBMethods.parameters(game), row -> targetCounts.put(row.getInt(0), row.getInt(1)));
+
+    List<List<String>> rows = new ArrayList<>();
+    for (Target<Team> t : targets) {
+      int killerID = t.getAssassin().getID();
+      int count = targetCounts.merge(killerID, 1, Integer::sum);
+      if (count > maxTargets) {
+        throw new InvalidActionException("This team is at the maximum number of targets.");
+      }
+      rows.add(DBMethods.parameters(t.getAssassin(), t.getTarget()));
+    }
+    db().updateBatch("insert into target (killer, target) values (?, ?)", rows);
+    GameVersions.changed(game);
+    GameEvents.targetsChanged(game);
+  }
+
   // CREATING/FINDING TEAMS ====================================================
 
   /**
@@ -347,13 +431,10 @@ public class Team implements Identifiable {
       throw new InvalidActionException("You cannot add a team once the game has started.");
     }
     String command = "insert into team (codename, game, join_code) values (?, ?, ?)";
-    String code = DBMethods.generateUniqueCode(db, "team", "join_code");
+    String code = DBMethods.generateUniqueCode();
     List<String> parameters = DBMethods.parameters(codename, game, code);
-    db.updateDatabase(command, parameters);
-
-    List<List<String>> addedTeamQueryResult = db
-        .executeQuery("select last_insert_rowid() from team");
-    int addedTeamID = Integer.parseInt(addedTeamQueryResult.get(0).get(0));
+    int addedTeamID = db().insert(command, parameters);
+    GameVersions.changed(game);
     return new Team(addedTeamID);
   }
 
@@ -366,7 +447,7 @@ public class Team implements Identifiable {
    * @throws InvalidAccessException if there is no team with this ID
    */
   public static Team fromID(int id) throws DBAccessException, InvalidAccessException {
-    if (db.hasKey("select * from team where id = ?", DBMethods.parameters(id))) {
+    if (getRowCache().get(id) != null) {
       return new Team(id);
     } else {
       throw new InvalidAccessException("There is no team with id " + id);
@@ -382,14 +463,12 @@ public class Team implements Identifiable {
    * @throws InvalidAccessException if there is no team with this join code
    */
   public static Team fromJoinCode(String code) throws DBAccessException, InvalidAccessException {
-    List<List<String>> teamQueryResult = db.executeQuery("select id from team where join_code = ?",
-        DBMethods.parameters(code));
-    if (teamQueryResult.isEmpty()) {
+    Team team = db().queryFirst("select id from team where join_code = ?",
+        DBMethods.parameters(code), row -> new Team(row.getInt(0)));
+    if (team == null) {
       throw new InvalidAccessException("There is no team with that join code.");
-    } else {
-      int teamID = Integer.parseInt(teamQueryResult.get(0).get(0));
-      return new Team(teamID);
     }
+    return team;
   }
 
   // OVERRIDE METHODS ==========================================================
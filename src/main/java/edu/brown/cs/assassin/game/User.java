@@ -1,18 +1,15 @@
 package edu.brown.cs.assassin.game;
 
-import static edu.brown.cs.assassin.main.AssassinConstants.GAME_DATA_PATH;
-import static edu.brown.cs.assassin.main.AssassinConstants.GAME_TEST_DATA_PATH;
-import static edu.brown.cs.assassin.main.AssassinConstants.LOGIN_DATA_PATH;
-import static edu.brown.cs.assassin.main.AssassinConstants.LOGIN_TEST_DATA_PATH;
-
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 
+import edu.brown.cs.assassin.database.CachedRow;
 import edu.brown.cs.assassin.database.DBMethods;
 import edu.brown.cs.assassin.exception.DBAccessException;
 import edu.brown.cs.assassin.database.DBProxy;
+import edu.brown.cs.assassin.database.DBRegistry;
+import edu.brown.cs.assassin.database.RowCache;
 import edu.brown.cs.assassin.exception.InvalidAccessException;
 import edu.brown.cs.assassin.exception.InvalidActionException;
 import edu.brown.cs.assassin.login.Login;
@@ -23,8 +20,6 @@ import edu.brown.cs.assassin.main.AssassinConstants;
  */
 public class User implements Identifiable {
 
-  private static DBProxy userDB;
-  private static DBProxy gameDB;
   private int id;
   private String name;
   private String email;
@@ -32,27 +27,28 @@ public class User implements Identifiable {
   // DATABASE CONNECTIONS ======================================================
 
   /**
-   * Connects to the database used for storing actual user data.
+   * @return the login database, from the registry
+   * @throws DBAccessException if the database cannot be opened
    */
-  public static void connectToMainDB() {
-    try {
-      userDB = new DBProxy(LOGIN_DATA_PATH);
-      gameDB = new DBProxy(GAME_DATA_PATH);
-    } catch (DBAccessException e) {
-      System.err.println("Error connecting to database: " + e.getMessage());
-    }
+  private static DBProxy userDB() throws DBAccessException {
+    return DBRegistry.getLoginDB();
   }
 
   /**
-   * Connects to the database used for storing test user data.
+   * @return the game database, from the registry
+   * @throws DBAccessException if the database cannot be opened
    */
-  public static void connectToTestDB() {
-    try {
-      userDB = new DBProxy(LOGIN_TEST_DATA_PATH);
-      gameDB = new DBProxy(GAME_TEST_DATA_PATH);
-    } catch (DBAccessException e) {
-      System.err.println("Error connecting to database: " + e.getMessage());
-    }
+  private static DBProxy gameDB() throws DBAccessException {
+    return DBRegistry.getGameDB();
+  }
+
+  /**
+   * @return the cache of account details, e.g. for its hit rate. (Passwords
+   *         are never cached.)
+   * @throws DBAccessException if the database cannot be opened
+   */
+  public static RowCache getRowCache() throws DBAccessException {
+    return userDB().getRowCache("select email, name from login where id = ?");
   }
 
   // CONSTRUCTORS ==============================================================
@@ -95,8 +91,7 @@ public class User implements Identifiable {
    */
   public String getName() throws DBAccessException {
     if (name == null) {
-      name = userDB.executeQuery("select name from login where id = ?", DBMethods.parameters(id))
-              .get(0).get(0);
+      name = row().getString("name");
     }
     return name;
   }
@@ -107,25 +102,27 @@ public class User implements Identifiable {
    */
   public String getEmail() throws DBAccessException {
     if (email == null) {
-      email = userDB.executeQuery("select email from login where id = ?", DBMethods.parameters(id))
-              .get(0).get(0);
+      email = row().getString("email");
     }
     return email;
   }
 
+  private CachedRow row() throws DBAccessException {
+    CachedRow row = getRowCache().get(id);
+    if (row == null) {
+      throw new DBAccessException("There is no user with id " + id);
+    }
+    return row;
+  }
+
   /**
    * @return Players this user is playing as
    * @throws DBAccessException      if something goes wrong with the database
    * @throws InvalidAccessException if the database contains an invalid player ID
    */
   public List<Player> getPlayers() throws DBAccessException, InvalidAccessException {
-    List<List<String>> playerStrings = gameDB.executeQuery("select id from player where user = ?",
-            DBMethods.parameters(id));
-    List<Player> players = new ArrayList<>();
-    for (List<String> playerString : playerStrings) {
-      players.add(Player.fromID(Integer.parseInt(playerString.get(0))));
-    }
-    return players;
+    return gameDB().query("select id from player where user = ?", DBMethods.parameters(id),
+            row -> new Player(row.getInt(0)));
   }
 
   /**
@@ -134,19 +131,14 @@ public class User implements Identifiable {
    * @throws InvalidAccessException if the database contains an invalid ID
    */
   public List<Game> getPlayingGames() throws DBAccessException, InvalidAccessException {
-//    List<List<String>> gameStrings = gameDB.executeQuery(
+//    List<List<String>> gameStrings = gameDB().executeQuery(
 //            "select team.game from player, team where player.user = ? and player.team = team.id",
 //            DBMethods.parameters(id));
-    List<List<String>> gameStrings = gameDB.executeQuery(
+    return gameDB().query(
             "select game.id from player, team, game where player.user = ? "
                     + "and player.team = team.id and team.game = game.id "
                     + "order by game.created desc",
-            DBMethods.parameters(id));
-    List<Game> games = new ArrayList<>();
-    for (List<String> gameString : gameStrings) {
-      games.add(Game.fromID(Integer.parseInt(gameString.get(0))));
-    }
-    return games;
+            DBMethods.parameters(id), row -> new Game(row.getInt(0)));
   }
 
   /**
@@ -155,14 +147,9 @@ public class User implements Identifiable {
    * @throws InvalidAccessException if the database contains an invalid ID
    */
   public List<Game> getAdminGames() throws DBAccessException, InvalidAccessException {
-    List<List<String>> gameStrings = gameDB.executeQuery("select game.id from admin, game where "
+    return gameDB().query("select game.id from admin, game where "
                     + "admin.user = ? and admin.game = game.id order by game.created desc",
-            DBMethods.parameters(id));
-    List<Game> games = new ArrayList<>();
-    for (List<String> gameString : gameStrings) {
-      games.add(Game.fromID(Integer.parseInt(gameString.get(0))));
-    }
-    return games;
+            DBMethods.parameters(id), row -> new Game(row.getInt(0)));
   }
 
   // JOINING GAMES/TEAMS =======================================================
@@ -363,20 +350,17 @@ public class User implements Identifiable {
   public static User addUser(String email, String name, String password)
           throws DBAccessException, InvalidActionException {
     // Check if user email is valid (must be unique identifier)
-    if (userDB.hasKey("SELECT * FROM login WHERE email = ?", DBMethods.parameters(email))) {
+    if (userDB().hasKey("SELECT * FROM login WHERE email = ?", DBMethods.parameters(email))) {
       throw new InvalidActionException("Email already in use");
     } else {
       // Update the user database with new user information
-      userDB.updateDatabase(
+      int key = userDB().insert(
               "INSERT INTO login (email, password, name) " + "VALUES (?, ?, ?)",
               DBMethods.parameters(
                       email, Login.encryptInfo(password, AssassinConstants.KEY), name));
 
-      String keyString = userDB.executeQuery("select last_insert_rowid() from login").get(0).get(0);
-      int key = Integer.parseInt(keyString);
-
       // Update the game database with new user ID
-      gameDB.updateDatabase("insert into user (id) values (?)", DBMethods.parameters(key));
+      gameDB().updateDatabase("insert into user (id) values (?)", DBMethods.parameters(key));
 
       // Return a User object for convenience
       return new User(key, email, name);
@@ -392,14 +376,11 @@ public class User implements Identifiable {
    * @throws InvalidAccessException if there is no user with this ID
    */
   public static User fromID(int id) throws DBAccessException, InvalidAccessException {
-    String query = "SELECT email, name FROM login WHERE id = ?";
-    List<String> parameters = DBMethods.parameters(id);
-    List<List<String>> userStrings = userDB.executeQuery(query, parameters);
-    if (userStrings.isEmpty()) {
+    CachedRow row = getRowCache().get(id);
+    if (row == null) {
       throw new InvalidAccessException(String.format("Invalid user id '%s'", id));
     } else {
-      List<String> resRow = userStrings.get(0);
-      return new User(id, resRow.get(0), resRow.get(1));
+      return new User(id, row.getString("email"), row.getString("name"));
     }
   }
 
@@ -419,7 +400,7 @@ public class User implements Identifiable {
           throws DBAccessException, InvalidAccessException {
 
     // Query database for the given account
-    List<List<String>> databaseOutput = userDB.executeQuery(
+    List<List<String>> databaseOutput = userDB().executeQuery(
             "SELECT password, name, id FROM login WHERE email = ?", DBMethods.parameters(email));
     if (databaseOutput.size() == 0) {
       throw new InvalidAccessException("No account found with that email");
@@ -452,7 +433,7 @@ public class User implements Identifiable {
     String encrypted = Login.encryptInfo(newPass, AssassinConstants.KEY);
     String idString = String.valueOf(id);
     List<String> parameters = Arrays.asList(encrypted, idString);
-    userDB.updateDatabase("update login set password = ? where id = ?", parameters);
+    userDB().updateDatabase("update login set password = ? where id = ?", parameters);
   }
 
   // OVERRIDE METHODS ==========================================================
@@ -1,16 +1,13 @@
 package edu.brown.cs.assassin.graph;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
-import com.google.common.collect.Sets;
 
 import edu.brown.cs.assassin.main.AssassinConstants;
 
@@ -26,6 +23,10 @@ public class Graph<U> {
   private List<Target<U>> targets;
   private double metric; // metric for generated graph optimality
 
+  // Reused by every BFS: minimum distances from player 0, and the BFS queue
+  private int[] minDist;
+  private int[] queue;
+
   /**
    * Assassin Game Graph constructor.
    *
@@ -100,100 +101,70 @@ public class Graph<U> {
    * @return Score
    */
   public double bfs(Set<Integer> tNum) {
-    // Check that it's possible to reach all indices with given tNum
-    // If the sum of any subset of tNum is relatively prime to numPlayers, reachable
-    boolean reachable = false;
-    for (Set<Integer> s : DiscreteCalculations.powerSet(tNum)) {
-      int sum = 0;
-      // Compute sum of elements in set
-      Iterator<Integer> sumIter = s.iterator();
-      while (sumIter.hasNext()) {
-        sum += sumIter.next();
-      }
+    int[] offsets = new int[tNum.size()];
+    int count = 0;
+    for (int offset : tNum) {
+      offsets[count++] = offset;
+    }
+    return score(offsets, count);
+  }
 
-      if (DiscreteCalculations.gcd(numPlayers, sum) == 1) {
-        reachable = true;
-        break;
+  /**
+   * Scores the first count "target numbers" in offsets. Same as bfs, but reuses
+   * the distance and queue arrays between calls, so scoring every combination
+   * of target numbers allocates nothing per combination.
+   *
+   * @param offsets Array holding the "target numbers"
+   * @param count   Number of "target numbers" in offsets
+   * @return Score, or Double.MAX_VALUE if not every player can be reached
+   */
+  private double score(int[] offsets, int count) {
+    if (minDist == null) {
+      minDist = new int[numPlayers];
+      queue = new int[numPlayers];
+    }
+    // 0 represents not seen yet. Player 0 (the root) is only seen once a path
+    // leads back to it.
+    Arrays.fill(minDist, 0);
+
+    // Each player is queued at most once, so the queue is a plain array
+    int head = 0;
+    int tail = 0;
+    queue[tail++] = 0;
+    int seen = 0;
+
+    // Run BFS until every player has been seen
+    while (head < tail && seen < numPlayers) {
+      int vIndex = queue[head++];
+      int nextWeight = minDist[vIndex] + 1;
+
+      // Add adjacent vertices of the dequeued vertex to queue
+      for (int i = 0; i < count; i++) {
+        int newVtx = (vIndex + offsets[i]) % numPlayers;
+        if (minDist[newVtx] == 0) {
+          minDist[newVtx] = nextWeight;
+          seen++;
+          // Player 0 has already been expanded as the root
+          if (newVtx != 0) {
+            queue[tail++] = newVtx;
+          }
+        }
       }
     }
 
     // If not all indices are reachable, return maximum possible score.
-    if (!reachable) {
+    if (seen < numPlayers) {
       return Double.MAX_VALUE;
     }
 
-    int root = 0; // Represents number corresponding to Player 0
-
-    // Initialize array of 0s, where 0 represents not visited
-    int[] visited = new int[numPlayers];
-
-    // Initialize array to keep track of minimum distances
-    int[] minDist = new int[numPlayers];
-
-    // Store list of seen vertices
-    int[] seen = new int[numPlayers];
-
-    // Create a queue for BFS. Vertices stored in queue as [Vertex Index, Edge
-    // Weight]
-    LinkedList<int[]> queue = new LinkedList<>();
-
-    // Add initial adjacent vertices to queue. Current edge weight is 1.
-    Iterator<Integer> it = tNum.iterator();
-    while (it.hasNext()) {
-      int[] temp = {
-          it.next() + root, 1
-      };
-      queue.add(temp);
-    }
-
-    // Run BFS
-    while (queue.size() != 0) {
-      // Check if all nodes have been visited
-      int sum = 0;
-      for (int i : visited) {
-        sum += i;
-      }
-
-      // If all nodes visited, break.
-      if (sum == numPlayers) {
-        break;
-      }
-
-      // Dequeue a vertex from queue
-      int[] vtx = queue.poll();
-      int vIndex = vtx[0] % numPlayers;
-      int currWeight = vtx[1];
-
-      // If vertex hasn't been visited, store min edge weight and mark as visited.
-      if (visited[vIndex] == 0) {
-        visited[vIndex] = 1;
-        minDist[vIndex] = currWeight;
-      }
-
-      // Add adjacent vertices of the dequeued vertex v to queue
-      Iterator<Integer> i = tNum.iterator();
-      while (i.hasNext()) {
-        int newVtx = (vIndex + i.next()) % numPlayers;
-
-        // If vertex hasn't been seen, add to queue
-        if (seen[newVtx] == 0) {
-          seen[newVtx] = 1;
-          int[] temp = {
-              newVtx, currWeight + 1
-          };
-          queue.add(temp);
-        }
-      }
-    }
-
     // Sum of minimum distances from player 0 to every other player
     int total = 0;
-    for (int i = 1; i < minDist.length; i++) {
+    for (int i = 1; i < numPlayers; i++) {
       total += minDist[i];
     }
 
-    // Return score = D / D0, where D0 is distance for player 0 to get back to 0 & D
-    // is above sum.
+    // Return score = D / D0, where D0 is distance for player 0 to get back to 0 &
+    // D is above sum.
     return total / minDist[0];
   }
 
@@ -214,70 +185,77 @@ public class Graph<U> {
       index.put(i, players.get(i));
     }
 
-    // All possible unique "target numbers" besides 1
     /*
      * Imagine the players in a circle. Target number T means each player is
-     * assigned the Tth player going counter-clockwise
-     */
-    Set<Integer> playerSet = new HashSet<>();
-    for (int j = 2; j < players.size(); j++) {
-      playerSet.add(j);
-    }
-
-    // All possible lists of t - 1 unique "target numbers"
-    // We make the assumption that 1 must be part of any target number allocation.
-    Set<Set<Integer>> combos = Sets.combinations(playerSet, t - 1);
-
-    /*
+     * assigned the Tth player going counter-clockwise. We make the assumption
+     * that 1 must be part of any target number allocation, and go through every
+     * list of t - 1 other unique target numbers from 2 to n - 1 in increasing
+     * order.
+     *
      * For each list of t unique "target numbers": Construct a graph and find
      * minimum distance with BFS using player 0 as root node. Compute distance D,
      * where D is sum of minimum distances from player 0 to every other player.
      * Score = D / D0, where D0 is distance for player 0 to get back to 0. Use list
      * of target numbers that has minimum score.
      */
-    Set<Integer> minCombo = new HashSet<>();
+    int[] combo = new int[t];
+    combo[0] = 1;
+    for (int i = 1; i < t; i++) {
+      combo[i] = i + 1;
+    }
+    int[] minCombo = null;
     double minScore = Double.MAX_VALUE;
-    List<Double> scores = new ArrayList<>(); // Stores all scores for metric computation
+    double[] scores = new double[players.size()]; // All scores for metric computation
+    int numScores = 0;
 
-    for (Set<Integer> s : combos) {
-      // s is unmodifiable set. Copy contents into temp.
-      Set<Integer> sTemp = new HashSet<>();
-      for (Integer a : s) {
-        sTemp.add(a);
-      }
+    // With fewer than t - 1 other target numbers, there are no lists at all
+    boolean more = t + 1 <= players.size();
+    while (more) {
       boolean valid = true;
 
       // If number of targets >= 3, check condition to avoid cycles:
       // The non-1 target numbers are relatively prime
       if (t >= 3) {
-        for (Set<Integer> i : Sets.combinations(s, 2)) {
-          // i is unmodifiable set. Copy contents into iTemp.
-          ArrayList<Integer> iTemp = new ArrayList<>(i);
-          int first = iTemp.get(0);
-          int second = iTemp.get(1);
-          // Check condition
-          if (DiscreteCalculations.gcd(first, second) != 1) {
-            valid = false;
+        for (int i = 1; i < t && valid; i++) {
+          for (int j = i + 1; j < t && valid; j++) {
+            valid = DiscreteCalculations.gcd(combo[i], combo[j]) == 1;
           }
         }
       }
 
-      // If valid combination, add 1 to set and compute score with BFS
+      // If valid combination, compute score with BFS
       if (valid) {
-        sTemp.add(1);
-        double score = bfs(sTemp);
+        double score = score(combo, t);
         if (score < minScore) {
-          minCombo = sTemp;
+          minCombo = combo.clone();
           minScore = score;
         }
-        scores.add(score);
+        if (numScores == scores.length) {
+          scores = Arrays.copyOf(scores, numScores * 2);
+        }
+        scores[numScores++] = score;
+      }
+
+      // Move on to the next list: bump the last number that can still go up,
+      // and restart the ones after it right above it
+      int i = t - 1;
+      while (i > 0 && combo[i] == players.size() - t + i) {
+        i--;
+      }
+      more = i > 0;
+      if (more) {
+        combo[i]++;
+        for (int j = i + 1; j < t; j++) {
+          combo[j] = combo[j - 1] + 1;
+        }
       }
     }
 
     // Graph optimality metric computation
     double total = 0.0;
     double count = 0;
-    for (Double s : scores) {
+    for (int i = 0; i < numScores; i++) {
+      double s = scores[i];
       // Throwing out outlier scores
       if (s < minScore * AssassinConstants.PERCENTAGE) {
         total += s;
@@ -293,9 +271,8 @@ public class Graph<U> {
       // Get index of player
       int pIndex = index.inverse().get(p);
 
-      Iterator<Integer> i = minCombo.iterator();
-      while (i.hasNext()) {
-        int tIndex = (i.next() + pIndex) % numPlayers; // Get index of target
+      for (int i = 0; minCombo != null && i < t; i++) {
+        int tIndex = (minCombo[i] + pIndex) % numPlayers; // Get index of target
         U tempTarget = index.get(tIndex);
         compiledTargets.add(new Target<>(p, tempTarget)); // Add assassin/target pair
       }
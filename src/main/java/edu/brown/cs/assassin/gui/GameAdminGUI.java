@@ -227,7 +227,7 @@ public final class GameAdminGUI {
           success = true;
           if (email.equals("true")) {
             if (targetGame.emailBlast(subject, body)) {
-              message = "Email sent successfully to everyone in this game.";
+              message = "Email is being sent to everyone in this game.";
             } else {
               message = "Email could not send. Message posted anyway.";
               success = false;
@@ -0,0 +1,177 @@
+package edu.brown.cs.assassin.gui;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.servlet.http.HttpSession;
+
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
+import org.eclipse.jetty.websocket.api.annotations.WebSocket;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+
+import edu.brown.cs.assassin.exception.DBAccessException;
+import edu.brown.cs.assassin.exception.InvalidAccessException;
+import edu.brown.cs.assassin.game.Game;
+import edu.brown.cs.assassin.game.GameEvents;
+import edu.brown.cs.assassin.game.GameListener;
+import edu.brown.cs.assassin.game.Message;
+import edu.brown.cs.assassin.game.User;
+import edu.brown.cs.assassin.login.SessionManager;
+
+/**
+ * Pushes changes to games to the browsers viewing them, so players see kills
+ * without refreshing. A logged in browser subscribes to a game by opening a
+ * WebSocket to PATH?game=ID, and is then sent a small JSON object for each
+ * change: {"type": "message", "id": ..., "html": ...} for a new kill feed
+ * message, and {"type": "targets"} when the game's targets change.
+ *
+ * <p>
+ * All events are sent by one shared thread. The game listeners only queue
+ * work for it, and sends do not wait for the browser, so a slow connection
+ * holds up neither the request that made the change nor other subscribers.
+ * Targets usually change several times in one kill, so target events for a
+ * game that are still waiting to be sent are merged into one.
+ */
+@WebSocket
+public class GameEventSocket {
+  public static final String PATH = "/events";
+
+  private static final Gson GSON = new Gson();
+  private static final String TARGETS_EVENT = GSON.toJson(ImmutableMap.of("type", "targets"));
+
+  // Subscribers by game ID, and the game each subscriber is watching
+  private static final Map<Integer, Set<Session>> SUBSCRIBERS = new ConcurrentHashMap<>();
+  private static final Map<Session, Integer> GAMES = new ConcurrentHashMap<>();
+  // Games with a target event queued but not yet sent
+  private static final Set<Integer> PENDING_TARGETS = ConcurrentHashMap.newKeySet();
+
+  private static final ExecutorService FAN_OUT = Executors.newSingleThreadExecutor(r -> {
+    Thread thread = new Thread(r, "game-event-fan-out");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  static {
+    GameEvents.addListener(new GameListener() {
+      @Override
+      public void messageAdded(Message message) {
+        queueMessage(message);
+      }
+
+      @Override
+      public void targetsChanged(Game game) {
+        queueTargets(game.getID());
+      }
+    });
+  }
+
+  /**
+   * Subscribes a new connection to the game in its "game" parameter, or closes
+   * it if the user is not logged in, the game is not given, or the user neither
+   * plays in nor administers the game.
+   *
+   * @param session the WebSocket session
+   */
+  @OnWebSocketConnect
+  public void onConnect(Session session) {
+    Object httpSession = session.getUpgradeRequest().getSession();
+    Object userID = httpSession instanceof HttpSession
+        ? ((HttpSession) httpSession).getAttribute(SessionManager.ID_ATTR) : null;
+    if (!(userID instanceof Integer)) {
+      session.close(StatusCode.POLICY_VIOLATION, "Must be logged in to follow a game.");
+      return;
+    }
+    List<String> game = session.getUpgradeRequest().getParameterMap().get("game");
+    int gameID;
+    try {
+      gameID = Integer.parseInt(game.get(0));
+    } catch (NullPointerException | NumberFormatException e) {
+      session.close(StatusCode.BAD_DATA, "Invalid game ID.");
+      return;
+    }
+    try {
+      UserGUI.checkInGame(new User((Integer) userID), Game.fromID(gameID));
+    } catch (InvalidAccessException e) {
+      session.close(StatusCode.POLICY_VIOLATION, e.getMessage());
+      return;
+    } catch (DBAccessException e) {
+      session.close(StatusCode.SERVER_ERROR, "An error occurred");
+      return;
+    }
+    GAMES.put(session, gameID);
+    SUBSCRIBERS.compute(gameID, (id, sessions) -> {
+      Set<Session> subscribed = sessions == null ? ConcurrentHashMap.newKeySet() : sessions;
+      subscribed.add(session);
+      return subscribed;
+    });
+  }
+
+  /**
+   * Unsubscribes a closed connection.
+   *
+   * @param session    the WebSocket session
+   * @param statusCode why the connection was closed
+   * @param reason     a description of why the connection was closed
+   */
+  @OnWebSocketClose
+  public void onClose(Session session, int statusCode, String reason) {
+    unsubscribe(session);
+  }
+
+  private static void unsubscribe(Session session) {
+    Integer gameID = GAMES.remove(session);
+    if (gameID != null) {
+      SUBSCRIBERS.computeIfPresent(gameID, (id, sessions) -> {
+        sessions.remove(session);
+        return sessions.isEmpty() ? null : sessions;
+      });
+    }
+  }
+
+  private static void queueMessage(Message message) {
+    try {
+      int gameID = message.getGameID();
+      if (!SUBSCRIBERS.containsKey(gameID)) {
+        return;
+      }
+      String html = KillFeedCache.render(message);
+      String event = GSON.toJson(ImmutableMap.of("type", "message", "id", message.getID(),
+          "html", html));
+      FAN_OUT.execute(() -> send(gameID, event));
+    } catch (DBAccessException | InvalidAccessException e) {
+      // The message cannot be rendered; browsers will see it when they next load the page
+    }
+  }
+
+  private static void queueTargets(int gameID) {
+    if (SUBSCRIBERS.containsKey(gameID) && PENDING_TARGETS.add(gameID)) {
+      FAN_OUT.execute(() -> {
+        PENDING_TARGETS.remove(gameID);
+        send(gameID, TARGETS_EVENT);
+      });
+    }
+  }
+
+  private static void send(int gameID, String event) {
+    Set<Session> sessions = SUBSCRIBERS.get(gameID);
+    if (sessions == null) {
+      return;
+    }
+    for (Session session : sessions) {
+      if (session.isOpen()) {
+        session.getRemote().sendStringByFuture(event);
+      } else {
+        unsubscribe(session);
+      }
+    }
+  }
+}
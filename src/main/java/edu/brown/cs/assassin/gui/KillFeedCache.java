@@ -0,0 +1,240 @@
+package edu.brown.cs.assassin.gui;
+
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import edu.brown.cs.assassin.database.DBProxy;
+import edu.brown.cs.assassin.database.DBRegistry;
+import edu.brown.cs.assassin.exception.DBAccessException;
+import edu.brown.cs.assassin.exception.InvalidAccessException;
+import edu.brown.cs.assassin.game.Game;
+import edu.brown.cs.assassin.game.GameEvents;
+import edu.brown.cs.assassin.game.GameListener;
+import edu.brown.cs.assassin.game.Message;
+import edu.brown.cs.assassin.game.MessageType;
+
+/**
+ * Kill feeds of games, rendered as HTML. Each message is rendered once: a
+ * game's feed is loaded from the database the first time it is shown, and
+ * after that every message added to the game is rendered and appended to the
+ * feed as it is committed. Everyone viewing a game is then served the same
+ * HTML without touching the database, until another message is added.
+ *
+ * <p>
+ * The latest FEED_LENGTH messages of at most MAX_GAMES games are kept; a game
+ * whose feed is evicted is loaded again when it is next shown. Feeds loaded
+ * from databases that have since been swapped out in the DBRegistry are
+ * reloaded as well.
+ */
+final class KillFeedCache {
+  static final int FEED_LENGTH = 50;
+  private static final int MAX_GAMES = 1000;
+
+  private static final Cache<Integer, GameFeed> FEEDS =
+      CacheBuilder.newBuilder().maximumSize(MAX_GAMES).build();
+
+  static {
+    GameEvents.addListener(new GameListener() {
+      @Override
+      public void messageAdded(Message message) {
+        KillFeedCache.messageAdded(message);
+      }
+    });
+  }
+
+  private KillFeedCache() {
+  }
+
+  /**
+   * The rendered messages of one game. Guarded by its own lock.
+   */
+  private static final class GameFeed {
+    // Rendered messages by message ID
+    private final NavigableMap<Integer, String> entries = new TreeMap<>();
+    // The database the feed was loaded from, or null if it has not been loaded
+    private DBProxy db;
+    // The last feed returned, and how many messages it has
+    private String html;
+    private int htmlCount;
+
+    void put(int id, String entry) {
+      entries.put(id, entry);
+      while (entries.size() > FEED_LENGTH) {
+        entries.pollFirstEntry();
+      }
+      html = null;
+    }
+
+    String latest(int count) {
+      if (html == null || htmlCount != count) {
+        StringBuilder feed = new StringBuilder();
+        int added = 0;
+        for (String entry : entries.descendingMap().values()) {
+          if (added == count) {
+            break;
+          }
+          feed.append(entry);
+          added++;
+        }
+        html = feed.toString();
+        htmlCount = count;
+      }
+      return html;
+    }
+  }
+
+  /**
+   * Gets the kill feed of a game.
+   *
+   * @param game  the game
+   * @param count the number of messages to show
+   * @return the latest messages, most recent first, as a string with embedded
+   *         HTML
+   * @throws DBAccessException      if something goes wrong with the database
+   * @throws InvalidAccessException if a message is missing one of its fields
+   */
+  static String getFeed(Game game, int count) throws DBAccessException, InvalidAccessException {
+    if (count > FEED_LENGTH) {
+      return render(game.getMessages(count));
+    }
+    GameFeed feed = feedOf(game.getID());
+    DBProxy db = DBRegistry.getGameDB();
+    synchronized (feed) {
+      if (feed.db != db) {
+        feed.entries.clear();
+        for (Message m : game.getMessages(FEED_LENGTH)) {
+          feed.put(m.getID(), render(m));
+        }
+        feed.db = db;
+      }
+      return feed.latest(count);
+    }
+  }
+
+  private static GameFeed feedOf(int gameID) throws DBAccessException {
+    try {
+      return FEEDS.get(gameID, GameFeed::new);
+    } catch (Exception e) {
+      // Creating an empty feed cannot fail
+      throw new DBAccessException(e.getMessage());
+    }
+  }
+
+  /**
+   * Appends a newly added message to its game's feed, if the feed is loaded.
+   * A feed that is not loaded yet gets the message when it is loaded, since
+   * the message has already been committed.
+   */
+  private static void messageAdded(Message message) {
+    int gameID = -1;
+    try {
+      gameID = message.getGameID();
+      GameFeed feed = FEEDS.getIfPresent(gameID);
+      if (feed == null) {
+        return;
+      }
+      synchronized (feed) {
+        if (feed.db == DBRegistry.getGameDB()) {
+          feed.put(message.getID(), render(message));
+        }
+      }
+    } catch (DBAccessException | InvalidAccessException e) {
+      // Drop the feed rather than let it miss a message; it is reloaded when
+      // it is next shown
+      FEEDS.invalidate(gameID);
+    }
+  }
+
+  /**
+   * Renders a list of messages, without caching.
+   *
+   * @param messages Kill feed messages
+   * @return Kill feed as a string with embedded HTML
+   * @throws DBAccessException      if something goes wrong with the database
+   * @throws InvalidAccessException if a message is missing one of its fields
+   */
+  static String render(List<Message> messages) throws DBAccessException, InvalidAccessException {
+    StringBuilder feed = new StringBuilder();
+    for (Message m : messages) {
+      feed.append(render(m));
+    }
+    return feed.toString();
+  }
+
+  /**
+   * Renders one message of a kill feed.
+   *
+   * @param m a message
+   * @return the message as a string with embedded HTML, or an empty string if
+   *         the message has no type
+   * @throws DBAccessException      if something goes wrong with the database
+   * @throws InvalidAccessException if the message is missing one of its fields
+   */
+  static String render(Message m) throws DBAccessException, InvalidAccessException {
+    MessageType type = m.getType();
+    if (type == null) {
+      return "";
+    }
+    String content;
+    switch (type) {
+      case START:
+        content = "The game has started!";
+        break;
+      case WIN:
+        content = String.format("%s won the game!", emphasize(m.getField(0)));
+        break;
+      case END:
+        content = "The game has ended!";
+        break;
+      case CHANGE_NAME:
+        content = String.format("The name of the game has been changed to %s",
+            emphasize(m.getField(0)));
+        break;
+      case CHANGE_RULES:
+        content = "The rules have been changed.";
+        break;
+      case CHANGE_ANON:
+        content = "The game has been made anonymous. You cannot see who is playing on your "
+            + "target team(s).";
+        break;
+      case CHANGE_NOT_ANON:
+        content = "The game has been made not anonymous. You can see who is playing on your "
+            + "target team(s).";
+        break;
+      case CHANGE_NUM_TARGETS:
+        content = String.format("The maximum number of targets has been changed to %s. This "
+            + "will take effect when new targets are assigned.", m.getField(0));
+        break;
+      case NEW_TARGETS:
+        content = "New targets have been assigned.";
+        break;
+      case REVIVE:
+        content = "All dead players on living teams have been revived.";
+        break;
+      case ELIMINATE:
+        content = String.format("%s eliminated %s!", emphasize(m.getField(0)),
+            emphasize(m.getField(1)));
+        break;
+      case SURRENDER:
+        content = String.format("%s surrendered.", emphasize(m.getField(0)));
+        break;
+      case CUSTOM:
+        content = m.getField(0);
+        break;
+      case NONE:
+        content = "[old message whose content has been lost]";
+        break;
+      default:
+        content = "";
+    }
+    return "<div class=\"feed-message\">" + content + "</div>";
+  }
+
+  private static String emphasize(String s) {
+    return String.format("<span class = \"message-emphasis\">%s</span>", s);
+  }
+}
@@ -0,0 +1,84 @@
+package edu.brown.cs.assassin.gui;
+
+import org.commonmark.parser.Parser;
+import org.commonmark.renderer.html.HtmlRenderer;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import edu.brown.cs.assassin.game.Game;
+import edu.brown.cs.assassin.game.GameEvents;
+import edu.brown.cs.assassin.game.GameListener;
+
+/**
+ * Game rules rendered from Markdown to HTML, kept per game so each version of
+ * a game's rules is parsed once rather than on every page view. A game's entry
+ * is dropped when Game.changeRules commits. Each entry also remembers the
+ * Markdown it was rendered from, and is only used for the same text, so rules
+ * changed some other way are never served stale.
+ *
+ * <p>
+ * The parser and renderer are shared; commonmark's are safe to use from
+ * several threads at once.
+ */
+final class RulesCache {
+  private static final int MAX_GAMES = 1000;
+
+  private static final Parser PARSER = Parser.builder().build();
+  private static final HtmlRenderer RENDERER = HtmlRenderer.builder().build();
+
+  private static final Cache<Integer, RenderedRules> RULES =
+      CacheBuilder.newBuilder().maximumSize(MAX_GAMES).build();
+
+  static {
+    GameEvents.addListener(new GameListener() {
+      @Override
+      public void rulesChanged(Game game) {
+        RULES.invalidate(game.getID());
+      }
+    });
+  }
+
+  private RulesCache() {
+  }
+
+  /**
+   * A game's rules and the HTML they render to.
+   */
+  private static final class RenderedRules {
+    private final String markdown;
+    private final String html;
+
+    RenderedRules(String markdown, String html) {
+      this.markdown = markdown;
+      this.html = html;
+    }
+  }
+
+  /**
+   * Gets a game's rules as HTML.
+   *
+   * @param gameID ID of the game
+   * @param rules  the game's rules, in Markdown
+   * @return the rules rendered as HTML
+   */
+  static String getRules(int gameID, String rules) {
+    RenderedRules cached = RULES.getIfPresent(gameID);
+    if (cached != null && cached.markdown.equals(rules)) {
+      return cached.html;
+    }
+    String html = render(rules);
+    RULES.put(gameID, new RenderedRules(rules, html));
+    return html;
+  }
+
+  /**
+   * Renders Markdown as HTML, without caching.
+   *
+   * @param markdown Markdown text
+   * @return the text rendered as HTML
+   */
+  static String render(String markdown) {
+    return RENDERER.render(PARSER.parse(markdown));
+  }
+}
@@ -1,14 +1,14 @@
 package edu.brown.cs.assassin.gui;
 
+import java.net.HttpURLConnection;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
-import org.commonmark.node.Node;
-import org.commonmark.parser.Parser;
-import org.commonmark.renderer.html.HtmlRenderer;
-
 import com.google.common.collect.ImmutableMap;
 import com.google.gson.Gson;
 
@@ -16,10 +16,12 @@ import edu.brown.cs.assassin.exception.DBAccessException;
 import edu.brown.cs.assassin.exception.InvalidAccessException;
 import edu.brown.cs.assassin.exception.InvalidActionException;
 import edu.brown.cs.assassin.game.Game;
+import edu.brown.cs.assassin.game.GameSnapshot;
+import edu.brown.cs.assassin.game.GameVersions;
 import edu.brown.cs.assassin.game.GameStatus;
 import edu.brown.cs.assassin.game.Message;
-import edu.brown.cs.assassin.game.MessageType;
 import edu.brown.cs.assassin.game.Player;
+import edu.brown.cs.assassin.game.TargetView;
 import edu.brown.cs.assassin.game.Team;
 import edu.brown.cs.assassin.game.User;
 import edu.brown.cs.assassin.login.SessionManager;
@@ -29,6 +31,7 @@ import spark.QueryParamsMap;
 import spark.Request;
 import spark.Response;
 import spark.Route;
+import spark.Spark;
 import spark.TemplateViewRoute;
 
 /**
@@ -77,15 +80,11 @@ public final class UserGUI {
    *
    * @param t Given team
    * @return Return type for working with FreeMarker
-   * @throws DBAccessException      if something goes wrong with the database
-   * @throws InvalidAccessException if the database contains an invalid team ID
    */
-  public static List<String> getTeamMembersForTeam(Team t)
-      throws DBAccessException, InvalidAccessException {
+  public static List<String> getTeamMembersForTeam(GameSnapshot.TeamView t) {
     List<String> output = new ArrayList<>();
-    List<Player> teammates = t.getPlayers();
-    for (Player p : teammates) {
-      String line = "<b>Player:</b> " + p.getUser().getName()
+    for (GameSnapshot.PlayerView p : t.getPlayers()) {
+      String line = "<b>Player:</b> " + p.getName()
           + (p.isAlive() ? "; <b>Status:</b> Alive<br>" : "; <b>Status:</b> Dead<br>");
       output.add(line);
     }
@@ -95,26 +94,22 @@ public final class UserGUI {
   /**
    * Retrieves targets for a given team.
    *
-   * @param t Given team
+   * @param game Snapshot of the team's game
+   * @param t    Given team
    * @return Targets
-   * @throws DBAccessException      if something goes wrong with the database
-   * @throws InvalidAccessException if the database contains an invalid team ID
    */
-  public static List<String> getTargetsForTeam(Team t)
-      throws DBAccessException, InvalidAccessException {
+  public static List<String> getTargetsForTeam(GameSnapshot game, GameSnapshot.TeamView t) {
     List<String> res = new ArrayList<>();
-    if (t.getGame().isAnonymous()) {
-      List<Team> targets = t.getDisplayedTargets();
-      for (Team target : targets) {
+    List<GameSnapshot.TeamView> targets = game.getDisplayedTargets(t);
+    if (game.isAnonymous()) {
+      for (GameSnapshot.TeamView target : targets) {
         res.add(target.getCodename());
       }
     } else {
-      List<Team> targets = t.getDisplayedTargets();
-      for (Team target : targets) {
-        List<Player> alivePlayers = target.getAlivePlayers();
+      for (GameSnapshot.TeamView target : targets) {
         String teamName = target.getCodename();
-        for (Player p : alivePlayers) {
-          res.add("Team: " + teamName + "; Player: " + p.getUser().getName());
+        for (GameSnapshot.PlayerView p : target.getAlivePlayers()) {
+          res.add(formatTarget(teamName, p.getName()));
         }
       }
     }
@@ -122,123 +117,75 @@ public final class UserGUI {
   }
 
   /**
-   * Retrieves all teams and players in a given game.
+   * Retrieves targets for a given team, formatted like getTargetsForTeam.
    *
-   * @param gamer Given game
-   * @return Teams and players
-   * @throws DBAccessException      if something goes wrong with the database
-   * @throws InvalidAccessException if the database contains an invalid game ID
+   * @param targets The team's targets, from Team.getTargetView
+   * @param anonymous Whether the team's game is anonymous
+   * @return Targets
    */
-  public static List<String> getFormattablePlayers(Game gamer)
-      throws DBAccessException, InvalidAccessException {
-    List<String> output = new ArrayList<>();
-    List<Team> teams = gamer.getTeams();
-    for (Team team : teams) {
-      String teamName = team.getCodename();
-      List<Player> players = team.getPlayers();
-      for (Player player : players) {
-        String line = "<b>Team:</b> " + teamName + "; <b>Player:</b> " + player.getUser().getName()
-            + (player.isAlive() ? "; <b>Status:</b> Alive<br>" : "; <b>Status:</b> Dead<br>");
-        output.add(line);
+  public static List<String> getTargetsForTeam(List<TargetView> targets, boolean anonymous) {
+    List<String> res = new ArrayList<>();
+    for (TargetView target : targets) {
+      if (anonymous) {
+        res.add(target.getCodename());
+      } else {
+        for (String name : target.getPlayerNames()) {
+          res.add(formatTarget(target.getCodename(), name));
+        }
       }
     }
-    return output;
-  }
-
-  private static String renderMarkdown(String s) {
-    Parser parser = Parser.builder().build();
-    Node document = parser.parse(s);
-    HtmlRenderer renderer = HtmlRenderer.builder().build();
-    return renderer.render(document);
+    return res;
   }
 
-  private static String emphasize(String s) {
-    return String.format("<span class = \"message-emphasis\">%s</span>", s);
+  private static String formatTarget(String teamName, String playerName) {
+    return "Team: " + teamName + "; Player: " + playerName;
   }
 
   /**
-   * Retrieve kill feed.
+   * Checks that a user can see a game's pages, i.e. that they play in it or
+   * are one of its admins.
    *
-   * @param messages Kill feed messages
-   * @return Kill feed as a string with embedded HTML
-   * @throws DBAccessException if something goes wrong with the database
+   * @param user The user
+   * @param game The game
+   * @throws DBAccessException      if something goes wrong with the database
+   * @throws InvalidAccessException if the user neither plays in nor administers
+   *                                the game
    */
-  private static String killfeedString(List<Message> messages)
+  static void checkInGame(User user, Game game)
       throws DBAccessException, InvalidAccessException {
-    StringBuilder killfeedString = new StringBuilder();
-    for (Message m : messages) {
-      MessageType type = m.getType();
-      if (type != null) {
-        killfeedString.append("<div class=\"feed-message\">");
-        String content;
-        switch (type) {
-          case START:
-            content = "The game has started!";
-            break;
-          case WIN:
-            content = String.format("%s won the game!", emphasize(m.getField(0)));
-            break;
-          case END:
-            content = "The game has ended!";
-            break;
-          case CHANGE_NAME:
-            content = String.format("The name of the game has been changed to %s",
-                emphasize(m.getField(0)));
-            break;
-          case CHANGE_RULES:
-            content = "The rules have been changed.";
-            break;
-          case CHANGE_ANON:
-            content = "The game has been made anonymous. You cannot see who is playing on your "
-                + "target team(s).";
-            break;
-          case CHANGE_NOT_ANON:
-            content = "The game has been made not anonymous. You can see who is playing on your "
-                + "target team(s).";
-            break;
-          case CHANGE_NUM_TARGETS:
-            content = String.format("The maximum number of targets has been changed to %s. This "
-                + "will take effect when new targets are assigned.", m.getField(0));
-            break;
-          case NEW_TARGETS:
-            content = "New targets have been assigned.";
-            break;
-          case REVIVE:
-            content = "All dead players on living teams have been revived.";
-            break;
-          case ELIMINATE:
-            content = String.format("%s eliminated %s!", emphasize(m.getField(0)),
-                emphasize(m.getField(1)));
-            break;
-          case SURRENDER:
-            content = String.format("%s surrendered.", emphasize(m.getField(0)));
-            break;
-          case CUSTOM:
-            content = m.getField(0);
-            break;
-          case NONE:
-            content = "[old message whose content has been lost]";
-            break;
-          default:
-            content = "";
-        }
+    if (!game.getAdmin().contains(user)) {
+      Player.fromUserAndGame(user, game);
+    }
+  }
 
-        killfeedString.append(content);
-        killfeedString.append("</div>");
+  /**
+   * Retrieves all teams and players in a given game.
+   *
+   * @param game Snapshot of the given game
+   * @return Teams and players
+   */
+  public static List<String> getFormattablePlayers(GameSnapshot game) {
+    List<String> output = new ArrayList<>();
+    for (GameSnapshot.TeamView team : game.getTeams()) {
+      String teamName = team.getCodename();
+      for (GameSnapshot.PlayerView player : team.getPlayers()) {
+        String line = "<b>Team:</b> " + teamName + "; <b>Player:</b> " + player.getName()
+            + (player.isAlive() ? "; <b>Status:</b> Alive<br>" : "; <b>Status:</b> Dead<br>");
+        output.add(line);
       }
     }
-    return killfeedString.toString();
+    return output;
   }
 
   /**
    * Given a user and a game, renders the home screen that the user should see for
    * that game.
    *
-   * @param g the game the user wishes to see.
+   * @param g a snapshot of the game the user wishes to see.
    * @param u the currently logged in user.
    * @return the variables to be shown on the page.
    */
-  public static ModelAndView handlePlayerGameHome(Game g, User u) {
+  public static ModelAndView handlePlayerGameHome(GameSnapshot g, User u) {
     String userName;
     String killCode;
     boolean alive;
@@ -267,22 +214,27 @@ public final class UserGUI {
           + "The maximum number of targets is " + g.getNumTargets() + "." + "<br>"
           + (g.isAnonymous() ? "This game has player anonymity turned on."
               : "This game has player anonymity turned off.");
-      gameDescription = renderMarkdown(gameDescriptionRaw);
+      gameDescription = RulesCache.getRules(g.getID(), gameDescriptionRaw);
 
       // Get user information
       userName = u.getName();
       gameList = getGamesForUser(u);
 
-      // Get user's kill code (if the user isn't a member of this game, an IAE is
-      // thrown)
-      Player thisPlayer = Player.fromUserAndGame(u, g);
+      // Get user's kill code
+      GameSnapshot.PlayerView thisPlayer = g.getPlayer(u);
+      if (thisPlayer == null) {
+        throw new InvalidAccessException("This user does not play in this game.");
+      }
       killCode = thisPlayer.getKillCode();
 
       // Gets player's targets and teammates
-      Team thisTeam = thisPlayer.getTeam();
+      GameSnapshot.TeamView thisTeam = g.getTeamOf(thisPlayer);
+      if (thisTeam == null) {
+        throw new InvalidAccessException("This user is not on a team in this game.");
+      }
       teamName = thisTeam.getCodename();
       teamMembers = getTeamMembersForTeam(thisTeam);
-      targets = getTargetsForTeam(thisTeam);
+      targets = getTargetsForTeam(g, thisTeam);
       teamJoin = thisTeam.getJoinCode();
 
       // Gets the status of this player and team
@@ -290,11 +242,10 @@ public final class UserGUI {
       teamAlive = thisTeam.isAlive();
 
       // Gets killfeed
-      killfeed = killfeedString(g.getMessages(MESSAGES));
+      killfeed = KillFeedCache.getFeed(g.getGame(), MESSAGES);
 
       if (g.getStatus() == GameStatus.DONE) {
-        List<Team> aliveTeams = g.getAliveTeams();
-        if (aliveTeams.contains(thisTeam)) {
+        if (thisTeam.isAlive()) {
           message = "Your team won this game!";
         } else {
           message = "Your team did not win this game.";
@@ -325,11 +276,11 @@ public final class UserGUI {
    * Given a user and a game, renders the home screen that the admin user should
    * see for that game.
    *
-   * @param g the game the user wishes to see.
+   * @param g a snapshot of the game the user wishes to see.
    * @param u the currently logged in user.
    * @return the variables to be shown on the page.
    */
-  public static ModelAndView handleAdminGameHome(Game g, User u) {
+  public static ModelAndView handleAdminGameHome(GameSnapshot g, User u) {
     String userName;
     String gameName = "";
     String gameDescription = "";
@@ -354,7 +305,7 @@ public final class UserGUI {
           + "The maximum number of targets for this game is " + g.getNumTargets() + "." + "<br>"
           + (g.isAnonymous() ? "This game has player anonymity turned on."
               : "This game has player anonymity turned off.");
-      gameDescription = renderMarkdown(gameDescriptionRaw);
+      gameDescription = RulesCache.getRules(g.getID(), gameDescriptionRaw);
       gamePlaying = g.getStatus() == GameStatus.PLAYING;
 
       // Get user information
@@ -362,7 +313,7 @@ public final class UserGUI {
       gameList = getGamesForUser(u);
 
       // Gets killfeed
-      killfeed = killfeedString(g.getMessages(MESSAGES));
+      killfeed = KillFeedCache.getFeed(g.getGame(), MESSAGES);
 
     } catch (NumberFormatException nfe) {
       return UtilGUI.renderErrorPage("This game does not exist.");
@@ -435,25 +386,60 @@ public final class UserGUI {
         return null;
       }
 
+      int id;
+      try {
+        id = Integer.parseInt(req.params(":gameID"));
+      } catch (NumberFormatException e) {
+        return withCacheHeaders(res, UtilGUI.renderErrorPage("Game not found"), null, null);
+      }
+
+      // The page depends only on the game, the user's game list and the user,
+      // so if none has changed since the browser's copy, it can keep it
+      String etag = String.format("\"%d-%d-%d-%d-%d\"",
+          GameVersions.getStartTime().toEpochMilli(), id, GameVersions.getVersion(id),
+          GameVersions.getGameListVersion(), thisUser.getID());
+      Instant lastModified = GameVersions.getLastModified(id);
+      if ("GET".equals(req.requestMethod()) && etag.equals(req.headers("If-None-Match"))) {
+        Spark.halt(HttpURLConnection.HTTP_NOT_MODIFIED);
+      }
+
       // Try to retrieve the desired game, and determine if user is an admin
-      Game targetGame;
+      GameSnapshot targetGame;
       boolean isAdmin;
+      ModelAndView page;
       try {
-        int id = Integer.parseInt(req.params(":gameID"));
-        targetGame = Game.fromID(id);
-        isAdmin = targetGame.getAdmin().contains(thisUser);
+        targetGame = Game.fromID(id).getSnapshot();
+        isAdmin = targetGame.isAdmin(thisUser);
+
+        // Render either an admin or player homepage
+        if (isAdmin) {
+          page = handleAdminGameHome(targetGame, thisUser);
+        } else {
+          page = handlePlayerGameHome(targetGame, thisUser);
+        }
       } catch (InvalidAccessException e) {
-        return UtilGUI.renderErrorPage("Game not found");
+        page = UtilGUI.renderErrorPage("Game not found");
       } catch (DBAccessException e) {
-        return UtilGUI.renderErrorPage();
+        page = UtilGUI.renderErrorPage();
       }
+      return withCacheHeaders(res, page, etag, lastModified);
+    }
 
-      // Return either an admin or player homepage
-      if (isAdmin) {
-        return handleAdminGameHome(targetGame, thisUser);
+    /**
+     * Lets the browser keep a rendered game page until its ETag changes. Error
+     * pages are not kept at all, so a passing error is not shown again.
+     */
+    private static ModelAndView withCacheHeaders(Response res, ModelAndView page, String etag,
+        Instant lastModified) {
+      if (UtilGUI.isErrorPage(page)) {
+        res.header("Cache-Control", "no-store");
       } else {
-        return handlePlayerGameHome(targetGame, thisUser);
+        res.header("ETag", etag);
+        res.header("Last-Modified",
+            DateTimeFormatter.RFC_1123_DATE_TIME.format(lastModified.atZone(ZoneOffset.UTC)));
+        res.header("Cache-Control", "private, no-cache");
       }
+      return page;
     }
   }
 
@@ -633,6 +619,93 @@ public final class UserGUI {
     }
   }
 
+  /**
+   * Returns a page of a game's kill feed as JSON. With a "before" message ID,
+   * returns older messages; with an "after" message ID, returns only newer
+   * ones; with neither, returns the latest. "limit" sets the page size, up to
+   * Game.MAX_MESSAGE_PAGE. Messages are most recent first, each with its ID,
+   * time (in epoch seconds) and rendered HTML.
+   */
+  public static class FeedPage implements Route {
+    @Override
+    public String handle(Request req, Response res) {
+      QueryParamsMap qm = req.queryMap();
+      List<Map<String, Object>> page = new ArrayList<>();
+      boolean success = false;
+      String message = "";
+
+      try {
+        User currUser = SessionManager.getLoggedInUser(req);
+        if (currUser == null) {
+          message = "Must be logged in to see a game's feed.";
+        } else if (qm.hasKey("before") && qm.hasKey("after")) {
+          message = "A feed page cannot be both before and after a message.";
+        } else {
+          Game game = Game.fromID(Integer.parseInt(req.params(":gameID")));
+          checkInGame(currUser, game);
+          int limit = qm.hasKey("limit") ? Integer.parseInt(qm.value("limit")) : MESSAGES;
+          limit = Math.max(1, Math.min(limit, Game.MAX_MESSAGE_PAGE));
+          List<Message> messages;
+          if (qm.hasKey("before")) {
+            messages = game.getMessagesBefore(Integer.parseInt(qm.value("before")), limit);
+          } else if (qm.hasKey("after")) {
+            messages = game.getMessagesAfter(Integer.parseInt(qm.value("after")), limit);
+          } else {
+            messages = game.getMessages(limit);
+          }
+          for (Message m : messages) {
+            page.add(ImmutableMap.of("id", m.getID(), "time", m.getTime().getEpochSecond(),
+                "html", KillFeedCache.render(m)));
+          }
+          success = true;
+        }
+      } catch (NumberFormatException e) {
+        message = "Invalid game or message ID.";
+      } catch (InvalidAccessException e) {
+        message = e.getMessage();
+      } catch (Exception e) {
+        message = "An error occurred";
+      }
+
+      return new Gson()
+          .toJson(ImmutableMap.of("success", success, "message", message, "messages", page));
+    }
+  }
+
+  /**
+   * Returns the logged in player's targets in a game as JSON, formatted as on
+   * the game page, for updating the page when targets change.
+   */
+  public static class TargetsHandler implements Route {
+    @Override
+    public String handle(Request req, Response res) {
+      List<String> targets = new ArrayList<>();
+      boolean success = false;
+      String message = "";
+
+      try {
+        User currUser = SessionManager.getLoggedInUser(req);
+        if (currUser == null) {
+          message = "Must be logged in to see your targets.";
+        } else {
+          Game game = Game.fromID(Integer.parseInt(req.params(":gameID")));
+          Player player = Player.fromUserAndGame(currUser, game);
+          targets = getTargetsForTeam(player.getTeam().getTargetView(), game.isAnonymous());
+          success = true;
+        }
+      } catch (NumberFormatException e) {
+        message = "Invalid game ID.";
+      } catch (InvalidAccessException e) {
+        message = e.getMessage();
+      } catch (Exception e) {
+        message = "An error occurred";
+      }
+
+      return new Gson()
+          .toJson(ImmutableMap.of("success", success, "message", message, "targets", targets));
+    }
+  }
+
   /**
    * Called when a user enters a kill code to kill another player.
    */
@@ -663,9 +736,9 @@ public final class UserGUI {
             if (killResult.didKill()) {
               success = true;
               if (!killResult.didEliminate()) {
-                message = "Kill successfully recorded! Refresh to see your new target.";
+                message = "Kill successfully recorded! Your targets will update shortly.";
               } else if (!killResult.didWin()) {
-                message = String.format("You eliminated Team %s! Refresh to see your new target.",
+                message = String.format("You eliminated Team %s! Your targets will update shortly.",
                     killResult.getTeam().getCodename());
               } else {
                 message = String.format("You eliminated Team %s and won the game!",
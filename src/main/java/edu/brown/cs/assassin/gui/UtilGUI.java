@@ -13,6 +13,7 @@ import spark.TemplateViewRoute;
  * UtilGUI class to easily produce ModelAndViews for error pages.
  */
 public final class UtilGUI {
+  private static final String ERROR_VIEW = "error.ftl";
 
   private UtilGUI() {
   }
@@ -34,7 +35,15 @@ public final class UtilGUI {
    */
   public static ModelAndView renderErrorPage(String error) {
     Map<String, Object> variables = ImmutableMap.of("error", error);
-    return new ModelAndView(variables, "error.ftl");
+    return new ModelAndView(variables, ERROR_VIEW);
+  }
+
+  /**
+   * @param page a rendered page
+   * @return whether the page is an error page
+   */
+  public static boolean isErrorPage(ModelAndView page) {
+    return page != null && ERROR_VIEW.equals(page.getViewName());
   }
 
   /**
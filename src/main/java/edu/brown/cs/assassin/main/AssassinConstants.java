@@ -17,6 +17,38 @@ public final class AssassinConstants {
   public static final String LOGIN_TEST_DATA_PATH = "data/loginDataTest.sqlite3";
   public static final String GAME_TEST_DATA_PATH = "data/gameDataTest.sqlite3";
 
+  // MAIL TRANSPORT: smtp, mbox or count, overridden by the system property
+  public static final String MAIL_TRANSPORT = "smtp";
+  public static final String MAIL_TRANSPORT_PROPERTY = "assassin.mail.transport";
+  public static final String MAIL_MBOX_PATH = "data/outbox.mbox";
+  public static final String MAIL_MBOX_PROPERTY = "assassin.mail.mbox";
+
+  // SMTP CONNECTIONS
+  public static final String SMTP_HOST = "smtp.gmail.com";
+  public static final int SMTP_PORT = 587;
+  public static final int SMTP_POOL_SIZE = 2;
+  public static final long SMTP_IDLE_MILLIS = 60 * 1000;
+  public static final long SMTP_TIMEOUT_MILLIS = 30 * 1000;
+
+  // EMAIL QUEUE
+  public static final int EMAIL_QUEUE_CAPACITY = 1000;
+  public static final int EMAIL_WORKERS = 2;
+  public static final int EMAIL_MAX_ATTEMPTS = 4;
+  public static final long EMAIL_RETRY_MILLIS = 2000;
+  // Recipients per email when a blast is split up
+  public static final int EMAIL_CHUNK_SIZE = 50;
+
+  // EMAIL OUTBOX
+  // A batch must be sent or given up on within the lease: with every email
+  // timing out, that takes OUTBOX_BATCH_SIZE * SMTP_TIMEOUT_MILLIS / EMAIL_WORKERS
+  public static final int OUTBOX_BATCH_SIZE = 20;
+  public static final long OUTBOX_POLL_MILLIS = 5000;
+  public static final long OUTBOX_LEASE_MILLIS = 10 * 60 * 1000;
+  public static final long OUTBOX_RETRY_MILLIS = 60 * 1000;
+  public static final int OUTBOX_MAX_ATTEMPTS = 5;
+  // How long game notifications wait to be merged with others into a digest
+  public static final long DIGEST_WINDOW_MILLIS = 20 * 1000;
+
   // IMPORTANT NUMBERS
   public static final int PERCENTAGE = 100;
   public static final int KEY_COPY = 16;
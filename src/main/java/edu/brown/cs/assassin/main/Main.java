@@ -9,8 +9,11 @@ import java.util.Map;
 import com.google.common.collect.ImmutableMap;
 
 import edu.brown.cs.assassin.database.DBMethods;
+import edu.brown.cs.assassin.email.EmailSender;
+import edu.brown.cs.assassin.email.OutboxDispatcher;
 import edu.brown.cs.assassin.exception.DBAccessException;
 import edu.brown.cs.assassin.gui.GameAdminGUI;
+import edu.brown.cs.assassin.gui.GameEventSocket;
 import edu.brown.cs.assassin.gui.LoginGUI;
 import edu.brown.cs.assassin.gui.UserGUI;
 import edu.brown.cs.assassin.gui.UtilGUI;
@@ -57,6 +60,8 @@ public final class Main {
 
   private void run() {
     DBMethods.connectToMainDB();
+    // Sends queued game emails, including any left unsent when the server last stopped
+    new OutboxDispatcher(EmailSender.getQueue()).start();
     runSparkServer();
   }
 
@@ -83,6 +88,8 @@ public final class Main {
   private void runSparkServer() {
     Spark.port(getHerokuAssignedPort());
     Spark.externalStaticFileLocation("src/main/resources/static");
+    // WebSockets must be set up before any routes
+    Spark.webSocket(GameEventSocket.PATH, GameEventSocket.class);
     Spark.exception(Exception.class, new ExceptionPrinter());
 
     FreeMarkerEngine freeMarker = createEngine();
@@ -123,6 +130,8 @@ public final class Main {
     Spark.post("/check-game-code", new UserGUI.GameCodeHandler());
     Spark.post("/check-kill-code", new UserGUI.KillRegistrationHandler());
     Spark.post("/surrender", new UserGUI.Surrender());
+    Spark.get("/feed/:gameID", new UserGUI.FeedPage());
+    Spark.get("/targets/:gameID", new UserGUI.TargetsHandler());
 
     // Game master controls
     Spark.post("/change-name", new GameAdminGUI.ChangeField());
@@ -46,8 +46,50 @@ $(document).ready(() => {
             checkAndExecuteKill();
         });
     }
+
+    followGame();
 });
 
+// Subscribes to live updates for the game being viewed: new feed messages are
+// added to the feed, and the target box is updated when targets change
+function followGame() {
+    const gameID = getGameID();
+    if (gameID === "" || !("WebSocket" in window)) {
+        return;
+    }
+    const protocol = window.location.protocol === "https:" ? "wss://" : "ws://";
+    const socket = new WebSocket(protocol + window.location.host + "/events?game=" + gameID);
+    socket.onmessage = event => {
+        const data = JSON.parse(event.data);
+        if (data.type === "message") {
+            $("#feed").prepend(data.html);
+        } else if (data.type === "targets" && $("#main-box").length !== 0) {
+            // Don't reload the admin page, which may have unsaved edits
+            setMessage("Targets have changed. Refresh to see the new targets.");
+        } else if (data.type === "targets" && $("#target-content").length !== 0) {
+            // Spread out the requests of everyone watching the game
+            setTimeout(() => updateTargets(gameID), Math.random() * 2000);
+        }
+    };
+}
+
+// Replaces the contents of the target box with the player's current targets
+function updateTargets(gameID) {
+    $.get("/targets/" + gameID, response => {
+        const jsonRes = JSON.parse(response);
+        if (!jsonRes.success) {
+            return;
+        }
+        const $targetContent = $("#target-content").empty();
+        if (jsonRes.targets.length === 0) {
+            $targetContent.append($("<i>").text("You have no targets."));
+        }
+        for (const target of jsonRes.targets) {
+            $targetContent.append($("<code>").append($("<span>").text(target)));
+        }
+    });
+}
+
 // Toggles the game selector menu display
 function toggleGameSelector() {
     $gameMenu.toggleClass("hidden");
@@ -0,0 +1,93 @@
+package edu.brown.cs.assassin.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.brown.cs.assassin.DBTestMethods;
+import edu.brown.cs.assassin.exception.DBAccessException;
+import edu.brown.cs.assassin.main.AssassinConstants;
+
+public class CodeAllocatorTest {
+  private static final String CODE_PATTERN = "([bcdfghjklmnprstvwyz][aeiou]){3} "
+      + "([bcdfghjklmnprstvwyz][aeiou]){3}";
+  private DBProxy db;
+
+  /**
+   * Clears and migrates the test databases and opens a proxy on the game one.
+   */
+  @Before
+  public void setUp() throws DBAccessException {
+    DBTestMethods.setUp();
+    db = new DBProxy(AssassinConstants.GAME_TEST_DATA_PATH);
+  }
+
+  /**
+   * Reconnects the game classes back to the main databases.
+   */
+  @After
+  public void tearDown() {
+    db.disconnect();
+    DBTestMethods.tearDown();
+  }
+
+  @Test
+  public void testEncode() {
+    assertEquals(735091890625L, CodeAllocator.codeSpace());
+    assertEquals("bababa bababa", CodeAllocator.encode(0));
+    assertEquals("bababa bababe", CodeAllocator.encode(1));
+    assertEquals("bababa babaca", CodeAllocator.encode(5));
+    assertEquals("zuzuzu zuzuzu", CodeAllocator.encode(CodeAllocator.codeSpace() - 1));
+  }
+
+  @Test
+  public void testCodesAreUnique() throws DBAccessException {
+    CodeAllocator first = new CodeAllocator(db);
+    CodeAllocator second = new CodeAllocator(db);
+    Set<String> seen = new HashSet<>();
+    for (int i = 0; i < 1000; i++) {
+      String code = (i % 2 == 0 ? first : second).nextCode();
+      assertTrue(code, code.matches(CODE_PATTERN));
+      assertTrue(code, seen.add(code));
+    }
+    List<String> block = first.nextCodes(5000);
+    assertEquals(5000, block.size());
+    seen.addAll(block);
+    assertEquals(6000, seen.size());
+  }
+
+  @Test(timeout = 10000)
+  public void testAllocatingInsideATransaction() throws Exception {
+    CodeAllocator allocator = new CodeAllocator(db);
+    AtomicReference<String> otherCode = new AtomicReference<>();
+    Thread other = new Thread(() -> {
+      try {
+        otherCode.set(allocator.nextCode());
+      } catch (DBAccessException e) {
+        otherCode.set(e.getMessage());
+      }
+    });
+    List<String> codes = db.inTransaction(() -> {
+      // Wait until the other thread is waiting for this thread's transaction
+      other.start();
+      while (other.getState() != Thread.State.WAITING) {
+        Thread.yield();
+      }
+      return allocator.nextCodes(3);
+    });
+    other.join();
+
+    Set<String> seen = new HashSet<>(codes);
+    assertTrue(otherCode.get(), otherCode.get().matches(CODE_PATTERN));
+    assertTrue(seen.add(otherCode.get()));
+    assertEquals(4, seen.size());
+  }
+}
@@ -0,0 +1,148 @@
+package edu.brown.cs.assassin.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.brown.cs.assassin.DBTestMethods;
+import edu.brown.cs.assassin.exception.DBAccessException;
+import edu.brown.cs.assassin.exception.InvalidAccessException;
+import edu.brown.cs.assassin.exception.InvalidActionException;
+import edu.brown.cs.assassin.main.AssassinConstants;
+
+public class DBProxyTest {
+  private DBProxy db;
+
+  /**
+   * Clears the test databases and opens a proxy with its own pool.
+   */
+  @Before
+  public void setUp() throws DBAccessException {
+    DBTestMethods.setUp();
+    db = new DBProxy(AssassinConstants.GAME_TEST_DATA_PATH);
+  }
+
+  /**
+   * Reconnects the game classes back to the main databases.
+   */
+  @After
+  public void tearDown() {
+    db.disconnect();
+    DBTestMethods.tearDown();
+  }
+
+  @Test
+  public void testStatementCache() throws DBAccessException {
+    String query = "select id from game where id = ?";
+    db.executeQuery(query, DBMethods.parameters(1));
+    long misses = db.getStatementCacheMisses();
+    long hits = db.getStatementCacheHits();
+
+    db.executeQuery(query, DBMethods.parameters(2));
+    db.hasKey(query, DBMethods.parameters(3));
+    assertEquals(misses, db.getStatementCacheMisses());
+    assertEquals(hits + 2, db.getStatementCacheHits());
+  }
+
+  @Test
+  public void testReadTransactionSeesOneState() throws Exception {
+    String count = "select count(*) from user";
+    db.updateDatabase("insert into user (id) values (?)", DBMethods.parameters(3));
+    List<Integer> counts = db.inReadTransaction(() -> {
+      int before = db.queryFirst(count, Collections.emptyList(), row -> row.getInt(0));
+      // Another thread commits a row while the transaction is open
+      Thread writer = new Thread(() -> {
+        try {
+          db.updateDatabase("insert into user (id) values (?)", DBMethods.parameters(5));
+        } catch (DBAccessException e) {
+          throw new IllegalStateException(e);
+        }
+      });
+      writer.start();
+      Uninterruptibles.joinUninterruptibly(writer);
+      int after = db.queryFirst(count, Collections.emptyList(), row -> row.getInt(0));
+      return Arrays.asList(before, after);
+    });
+    assertEquals(Arrays.asList(1, 1), counts);
+    assertEquals(2, (int) db.queryFirst(count, Collections.emptyList(), row -> row.getInt(0)));
+  }
+
+  @Test
+  public void testInsertReturnsRowID() throws DBAccessException {
+    int first = db.insert("insert into user (id) values (?)", DBMethods.parameters(7));
+    int second = db.insert("insert into user (id) values (?)", DBMethods.parameters(9));
+    assertEquals(7, first);
+    assertEquals(9, second);
+    assertTrue(db.hasKey("select * from user where id = ?", Collections.singletonList("9")));
+  }
+
+  @Test
+  public void testTypedQueries() throws DBAccessException {
+    db.updateDatabase("insert into user (id) values (?)", DBMethods.parameters(3));
+    db.updateDatabase("insert into user (id) values (?)", DBMethods.parameters(5));
+
+    List<Integer> ids = db.query("select id from user order by id", Collections.emptyList(),
+        row -> row.getInt(0));
+    assertEquals(Arrays.asList(3, 5), ids);
+
+    long max = db.queryFirst("select max(id) from user", Collections.emptyList(),
+        row -> row.getLong(0));
+    assertEquals(5, max);
+    assertNull(db.queryFirst("select id from user where id = ?", DBMethods.parameters(4),
+        row -> row.getInt(0)));
+
+    List<List<String>> strings = db.executeQuery("select id, null from user order by id");
+    assertEquals(Arrays.asList("3", "null"), strings.get(0));
+  }
+
+  @Test
+  public void testUpdateBatch() throws DBAccessException {
+    String insert = "insert into user (id) values (?)";
+    db.updateBatch(insert, Arrays.asList(DBMethods.parameters(1), DBMethods.parameters(2),
+        DBMethods.parameters(3)));
+    assertEquals(3, db.executeQuery("select id from user").size());
+
+    // The duplicate ID makes the whole batch fail, so 4 is not added either
+    assertThrows(DBAccessException.class, () -> db.updateBatch(insert,
+        Arrays.asList(DBMethods.parameters(4), DBMethods.parameters(1))));
+    assertFalse(db.hasKey("select * from user where id = ?", DBMethods.parameters(4)));
+    assertEquals(3, db.executeQuery("select id from user").size());
+  }
+
+  @Test
+  public void testTransaction()
+      throws DBAccessException, InvalidAccessException, InvalidActionException {
+    String insert = "insert into user (id) values (?)";
+    String select = "select * from user where id = ?";
+    int count = db.inTransaction(() -> {
+      db.updateDatabase(insert, DBMethods.parameters(1));
+      // Nested work joins the outer transaction
+      db.inTransaction(() -> db.insert(insert, DBMethods.parameters(2)));
+      // Reads inside the transaction see its uncommitted writes
+      return db.executeQuery("select id from user").size();
+    });
+    assertEquals(2, count);
+    assertTrue(db.hasKey(select, DBMethods.parameters(2)));
+
+    // A failure anywhere in the work rolls all of it back
+    assertThrows(InvalidActionException.class, () -> db.inTransaction(() -> {
+      db.updateDatabase(insert, DBMethods.parameters(3));
+      db.updateBatch(insert, Collections.singletonList(DBMethods.parameters(4)));
+      throw new InvalidActionException("Abandoned.");
+    }));
+    assertFalse(db.hasKey(select, DBMethods.parameters(3)));
+    assertFalse(db.hasKey(select, DBMethods.parameters(4)));
+    assertEquals(2, db.executeQuery("select id from user").size());
+  }
+}
@@ -0,0 +1,77 @@
+package edu.brown.cs.assassin.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.brown.cs.assassin.DBTestMethods;
+import edu.brown.cs.assassin.exception.DBAccessException;
+import edu.brown.cs.assassin.exception.InvalidActionException;
+import edu.brown.cs.assassin.game.User;
+import edu.brown.cs.assassin.main.AssassinConstants;
+
+public class DBRegistryTest {
+
+  /**
+   * Clears the test databases and switches the registry to them.
+   */
+  @Before
+  public void setUp() throws DBAccessException {
+    DBTestMethods.setUp();
+  }
+
+  /**
+   * Switches the registry back to the main databases.
+   */
+  @After
+  public void tearDown() {
+    DBTestMethods.tearDown();
+  }
+
+  @Test
+  public void testSwapClosesOldDatabases() throws DBAccessException {
+    DBProxy game = DBRegistry.getGameDB();
+    DBProxy login = DBRegistry.getLoginDB();
+    assertSame(game, DBRegistry.getGameDB());
+    assertTrue(game.isConnected());
+
+    DBMethods.connectToTestDB();
+    assertFalse(game.isConnected());
+    assertFalse(login.isConnected());
+    DBProxy newGame = DBRegistry.getGameDB();
+    assertNotSame(game, newGame);
+    assertTrue(newGame.isConnected());
+    assertThrows(DBAccessException.class, () -> game.executeQuery("select * from game"));
+  }
+
+  @Test
+  public void testClose() throws DBAccessException {
+    DBProxy game = DBRegistry.getGameDB();
+    DBRegistry.close();
+    assertFalse(game.isConnected());
+    assertThrows(DBAccessException.class, DBRegistry::getGameDB);
+
+    DBRegistry.use(AssassinConstants.LOGIN_TEST_DATA_PATH, AssassinConstants.GAME_TEST_DATA_PATH);
+    assertTrue(DBRegistry.getGameDB().isConnected());
+  }
+
+  @Test
+  public void testLoginAttachedToGameDB() throws DBAccessException, InvalidActionException {
+    DBTestMethods.addUsers(3);
+    DBProxy game = DBRegistry.getGameDB();
+    assertEquals(DBRegistry.getLoginDB().executeQuery("select name from login order by id"),
+        game.executeQuery("select name from " + DBRegistry.LOGIN_SCHEMA + ".login order by id"));
+
+    // Users added after the game database is opened are seen as well
+    User.addUser("late@email.com", "Late", "late password");
+    assertEquals("4", game.queryFirst("select count(*) from login.login",
+        DBMethods.parameters(), row -> row.getString(0)));
+  }
+}
@@ -0,0 +1,67 @@
+package edu.brown.cs.assassin.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.brown.cs.assassin.DBTestMethods;
+import edu.brown.cs.assassin.exception.DBAccessException;
+import edu.brown.cs.assassin.exception.InvalidActionException;
+import edu.brown.cs.assassin.main.AssassinConstants;
+
+public class RowCacheTest {
+  private static final String RENAME = "update team set codename = ? where id = ?";
+  private DBProxy db;
+  private RowCache cache;
+
+  /**
+   * Clears the test databases and adds one team to cache.
+   */
+  @Before
+  public void setUp() throws DBAccessException {
+    DBTestMethods.setUp();
+    db = new DBProxy(AssassinConstants.GAME_TEST_DATA_PATH);
+    db.updateDatabase("insert into team (id, codename, game, join_code) values (1, ?, 1, ?)",
+        DBMethods.parameters("Sharks", "code"));
+    cache = new RowCache(db, "select * from team where id = ?");
+  }
+
+  /**
+   * Reconnects the game classes back to the main databases.
+   */
+  @After
+  public void tearDown() {
+    db.disconnect();
+    DBTestMethods.tearDown();
+  }
+
+  @Test
+  public void testReadThrough() throws DBAccessException {
+    assertEquals("Sharks", cache.get(1).getString("codename"));
+    assertEquals(1, cache.get(1).getInt("alive"));
+    assertNull(cache.get(2));
+    assertEquals(1, cache.stats().hitCount());
+
+    // Without an invalidation, the cache keeps serving the old row
+    db.updateDatabase(RENAME, DBMethods.parameters("Jets", 1));
+    assertEquals("Sharks", cache.get(1).getString("codename"));
+    cache.invalidate(1);
+    assertEquals("Jets", cache.get(1).getString("codename"));
+  }
+
+  @Test
+  public void testRolledBackWritesAreNotCached() throws DBAccessException {
+    assertThrows(InvalidActionException.class, () -> db.inTransaction(() -> {
+      db.updateDatabase(RENAME, DBMethods.parameters("Jets", 1));
+      cache.invalidate(1);
+      // Read inside the transaction, so it sees the uncommitted name
+      assertEquals("Jets", cache.get(1).getString("codename"));
+      throw new InvalidActionException("Abandoned.");
+    }));
+    assertEquals("Sharks", cache.get(1).getString("codename"));
+  }
+}
@@ -0,0 +1,61 @@
+package edu.brown.cs.assassin.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.brown.cs.assassin.DBTestMethods;
+import edu.brown.cs.assassin.exception.DBAccessException;
+import edu.brown.cs.assassin.main.AssassinConstants;
+
+public class SchemaMigrationsTest {
+  private ConnectionPool pool;
+
+  /**
+   * Connects to the test databases, and migrates the game database (the
+   * registry only opens, and so migrates, a database when it is first used).
+   */
+  @Before
+  public void setUp() throws DBAccessException {
+    DBTestMethods.setUp();
+    pool = new ConnectionPool(AssassinConstants.GAME_TEST_DATA_PATH);
+    SchemaMigrations.migrate(pool);
+  }
+
+  /**
+   * Closes the extra pool and reconnects to the main databases.
+   */
+  @After
+  public void tearDown() {
+    pool.close();
+    DBTestMethods.tearDown();
+  }
+
+  @Test
+  public void testMigrateIsIdempotent() throws DBAccessException {
+    assertEquals(SchemaMigrations.latestVersion(), SchemaMigrations.migrate(pool));
+    assertEquals(SchemaMigrations.latestVersion(), SchemaMigrations.migrate(pool));
+    DBProxy db = new DBProxy(pool);
+    int version = db.queryFirst("pragma user_version", Collections.emptyList(),
+        row -> row.getInt(0));
+    assertEquals(SchemaMigrations.latestVersion(), version);
+  }
+
+  @Test
+  public void testHotQueriesUseIndexes() throws DBAccessException {
+    DBProxy db = new DBProxy(pool);
+    List<String> plan = db.query("explain query plan select id from player where team = ? "
+        + "and alive = 1", DBMethods.parameters(1), row -> row.getString(3));
+    assertTrue(plan.toString(), plan.get(0).contains("player_team_index"));
+
+    plan = db.query("explain query plan select target from target where killer = ?",
+        DBMethods.parameters(1), row -> row.getString(3));
+    assertTrue(plan.toString(), plan.get(0).contains("target_killer_index"));
+  }
+}
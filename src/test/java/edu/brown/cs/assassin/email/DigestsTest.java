@@ -0,0 +1,82 @@
+package edu.brown.cs.assassin.email;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class DigestsTest {
+  private static final List<String> TEAM = Arrays.asList("a@email.com", "b@email.com");
+  private static final List<String> GAME =
+      Arrays.asList("a@email.com", "b@email.com", "c@email.com");
+
+  private static Outbox.Entry entry(int id, List<String> to, String subject, Integer game,
+      String kind) {
+    return new Outbox.Entry(id, new Email(to, subject, "text " + subject, false), game, kind);
+  }
+
+  @Test
+  public void testSingleEmailsAreUnchanged() {
+    List<Outbox.Entry> entries = Arrays.asList(entry(1, TEAM, "custom", null, null),
+        entry(2, TEAM, "eliminated", 7, "ELIMINATE"), entry(3, TEAM, "started", 8, "START"));
+    List<Digests.Digest> digests = Digests.merge(entries, 50);
+    assertEquals(3, digests.size());
+    for (int i = 0; i < 3; i++) {
+      assertEquals(Collections.singletonList(i + 1), digests.get(i).getIDs());
+      assertTrue(entries.get(i).getEmail() == digests.get(i).getEmail());
+    }
+  }
+
+  @Test
+  public void testEachRecipientGetsOneDigest() {
+    List<Digests.Digest> digests = Digests.merge(Arrays.asList(
+        entry(1, TEAM, "revived", 7, "REVIVE"),
+        entry(2, GAME, "new targets", 7, "NEW_TARGETS")), 50);
+    assertEquals(2, digests.size());
+
+    Email both = digests.get(0).getEmail();
+    assertEquals(TEAM, both.getRecipients());
+    assertEquals("revived (and 1 more updates)", both.getSubject());
+    assertTrue(both.getText().contains("<h3>new targets</h3>text new targets"));
+    assertEquals(Arrays.asList(1, 2), digests.get(0).getIDs());
+
+    Email one = digests.get(1).getEmail();
+    assertEquals(Collections.singletonList("c@email.com"), one.getRecipients());
+    assertEquals("new targets", one.getSubject());
+    assertEquals(Collections.singletonList(2), digests.get(1).getIDs());
+  }
+
+  @Test
+  public void testRepeatedNotificationsAppearOnce() {
+    List<Digests.Digest> digests = Digests.merge(Arrays.asList(
+        entry(1, TEAM, "new targets", 7, "NEW_TARGETS"),
+        entry(2, TEAM, "new targets", 7, "NEW_TARGETS")), 50);
+    assertEquals(1, digests.size());
+    assertEquals("new targets", digests.get(0).getEmail().getSubject());
+    assertEquals(Arrays.asList(1, 2), digests.get(0).getIDs());
+  }
+
+  @Test
+  public void testHiddenRecipientsAreChunked() {
+    List<String> players = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      players.add("player" + i + "@email.com");
+    }
+    List<Digests.Digest> digests = Digests.merge(Arrays.asList(
+        new Outbox.Entry(1, new Email(players, "started", "text", true), 7, "START"),
+        new Outbox.Entry(2, new Email(players, "new targets", "text", true), 7,
+            "NEW_TARGETS")), 2);
+    assertEquals(3, digests.size());
+    for (Digests.Digest digest : digests) {
+      assertTrue(digest.getEmail().isBcc());
+      assertEquals(Arrays.asList(1, 2), digest.getIDs());
+    }
+    assertEquals(Collections.singletonList("player4@email.com"),
+        digests.get(2).getEmail().getRecipients());
+  }
+}
@@ -0,0 +1,101 @@
+package edu.brown.cs.assassin.email;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class EmailQueueTest {
+  private static final List<String> TO = Collections.singletonList("someone@email.com");
+
+  @Test
+  public void testSendsInBackground() throws InterruptedException {
+    List<String> subjects = new CopyOnWriteArrayList<>();
+    EmailQueue queue = new EmailQueue(10, 2, 1, 0, email -> {
+      subjects.add(email.getSubject());
+      return true;
+    });
+    for (int i = 0; i < 5; i++) {
+      assertTrue(queue.enqueue(TO, "subject " + i, "text"));
+    }
+    assertTrue(queue.shutdown(5000));
+    assertEquals(5, subjects.size());
+    assertEquals(5, queue.getSentCount());
+    assertEquals(0, queue.getFailedCount());
+    assertTrue(queue.getMaxLatencyMillis() >= queue.getAverageLatencyMillis());
+    assertFalse(queue.enqueue(TO, "too late", "text"));
+  }
+
+  @Test
+  public void testRetriesUntilSent() throws InterruptedException {
+    AtomicInteger attempts = new AtomicInteger();
+    CountDownLatch delivered = new CountDownLatch(1);
+    EmailQueue queue = new EmailQueue(10, 1, 3, 1, email -> {
+      if (attempts.incrementAndGet() < 3) {
+        return false;
+      }
+      delivered.countDown();
+      return true;
+    });
+    queue.enqueue(TO, "subject", "text");
+    assertTrue(delivered.await(5, TimeUnit.SECONDS));
+    assertTrue(queue.shutdown(5000));
+    assertEquals(3, attempts.get());
+    assertEquals(2, queue.getRetryCount());
+    assertEquals(1, queue.getSentCount());
+    assertEquals(0, queue.getFailedCount());
+  }
+
+  @Test
+  public void testGivesUpAfterMaxAttempts() throws InterruptedException {
+    AtomicInteger attempts = new AtomicInteger();
+    EmailQueue queue = new EmailQueue(10, 1, 2, 1, email -> {
+      attempts.incrementAndGet();
+      throw new IllegalStateException("no connection");
+    });
+    queue.enqueue(TO, "subject", "text");
+    long deadline = System.currentTimeMillis() + 5000;
+    while (queue.getFailedCount() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertEquals(1, queue.getFailedCount());
+    assertEquals(2, attempts.get());
+    assertEquals(0, queue.getSentCount());
+    queue.shutdown(5000);
+  }
+
+  @Test
+  public void testRefusesWhenFull() throws InterruptedException {
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch started = new CountDownLatch(1);
+    EmailQueue queue = new EmailQueue(2, 1, 1, 0, email -> {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return true;
+    });
+    // One email being sent, and two waiting
+    assertTrue(queue.enqueue(TO, "first", "text"));
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    assertTrue(queue.enqueue(TO, "second", "text"));
+    assertTrue(queue.enqueue(TO, "third", "text"));
+    assertEquals(2, queue.getQueueDepth());
+    assertFalse(queue.enqueue(TO, "fourth", "text"));
+    assertEquals(1, queue.getRefusedCount());
+
+    release.countDown();
+    assertTrue(queue.shutdown(5000));
+    assertEquals(3, queue.getSentCount());
+  }
+}
@@ -1,22 +1,58 @@
 package edu.brown.cs.assassin.email;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 import java.util.Arrays;
 import java.util.List;
 
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
 public class EmailSenderTest {
+  private CountingTransport sink;
+
+  /**
+   * Sends emails to a counting sink instead of a real mailbox.
+   */
+  @Before
+  public void setUp() {
+    sink = new CountingTransport();
+    EmailSender.setTransport(sink);
+  }
+
+  /**
+   * Goes back to the configured transport.
+   */
+  @After
+  public void tearDown() {
+    EmailSender.setTransport(MailTransport.fromConfiguration());
+  }
 
   @Test
   public void testSendingEmail() {
     List<String> recipients = Arrays.asList("haridandapani@gmail.com");
     String subject = "A subject";
     String body = "<b>BODY !</b>";
-    // Sometimes we reach our daily limit of emails sent, so just having this here
-    // to show that it doesn't error when that happens, even if the assertion isn't
-    // always true or false
 
-    EmailSender.send(recipients, subject, body);
+    assertTrue(EmailSender.send(recipients, subject, body));
+    assertEquals(1, sink.getEmailCount());
+    assertEquals(recipients, sink.getLast().getRecipients());
+    assertEquals(subject, sink.getLast().getSubject());
   }
 
+  @Test
+  public void testSendingLater() throws InterruptedException {
+    List<String> recipients = Arrays.asList("a@email.com", "b@email.com");
+    for (int i = 0; i < 10; i++) {
+      assertTrue(EmailSender.sendLater(recipients, "subject " + i, "body"));
+    }
+    long deadline = System.currentTimeMillis() + 5000;
+    while (sink.getEmailCount() < 10 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertEquals(10, sink.getEmailCount());
+    assertEquals(20, sink.getRecipientCount());
+  }
 }
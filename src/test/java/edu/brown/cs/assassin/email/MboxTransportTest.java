@@ -0,0 +1,64 @@
+package edu.brown.cs.assassin.email;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MboxTransportTest {
+  private Path file;
+
+  /**
+   * Picks a file for the mbox that does not exist yet.
+   */
+  @Before
+  public void setUp() throws IOException {
+    file = Files.createTempFile("assassin", ".mbox");
+    Files.delete(file);
+  }
+
+  /**
+   * Deletes the mbox.
+   */
+  @After
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  @Test
+  public void testWritesEveryEmail() throws IOException {
+    MboxTransport mbox = new MboxTransport(file);
+    assertTrue(mbox.send(new Email(Collections.singletonList("a@email.com"), "First",
+        "From the admins", false)));
+    assertTrue(mbox.send(new Email(Arrays.asList("b@email.com", "c@email.com"), "Second",
+        "<b>hi</b>", true)));
+
+    List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+    long messages = lines.stream().filter(line -> line.startsWith("From ")).count();
+    assertEquals(2, messages);
+    assertTrue(lines.contains("To: a@email.com"));
+    assertTrue(lines.contains("Subject: Second"));
+    assertTrue(lines.contains("Bcc: b@email.com, c@email.com"));
+    // Body lines that look like the start of a message are quoted
+    assertTrue(lines.contains(">From the admins"));
+    assertFalse(lines.contains("From the admins"));
+  }
+
+  @Test
+  public void testInvalidAddressFails() {
+    MboxTransport mbox = new MboxTransport(file);
+    assertFalse(mbox.send(new Email(Collections.singletonList("not an address"), "Subject",
+        "Body", false)));
+  }
+}
@@ -0,0 +1,238 @@
+package edu.brown.cs.assassin.email;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.brown.cs.assassin.DBTestMethods;
+import edu.brown.cs.assassin.database.DBMethods;
+import edu.brown.cs.assassin.database.DBProxy;
+import edu.brown.cs.assassin.database.DBRegistry;
+import edu.brown.cs.assassin.exception.DBAccessException;
+import edu.brown.cs.assassin.exception.InvalidActionException;
+import edu.brown.cs.assassin.main.AssassinConstants;
+
+public class OutboxTest {
+  private static final List<String> TO = Arrays.asList("a@email.com", "b@email.com");
+
+  private List<String> delivered;
+  private EmailQueue queue;
+
+  /**
+   * Clears the test databases, and makes a queue that records what it sends.
+   */
+  @Before
+  public void setUp() throws DBAccessException {
+    DBTestMethods.setUp();
+    delivered = new CopyOnWriteArrayList<>();
+    queue = new EmailQueue(10, 1, 1, 0, email -> {
+      delivered.add((email.isBcc() ? "bcc " : "") + String.join(",", email.getRecipients())
+          + ": " + email.getSubject());
+      return !email.getSubject().startsWith("bad");
+    });
+  }
+
+  /**
+   * Stops the queue and switches back to the main databases.
+   */
+  @After
+  public void tearDown() {
+    queue.shutdown(5000);
+    DBTestMethods.tearDown();
+  }
+
+  private int count(String condition) throws DBAccessException {
+    return DBRegistry.getGameDB().queryFirst("select count(*) from outbox where " + condition,
+        DBMethods.parameters(), row -> row.getInt(0));
+  }
+
+  /**
+   * Dispatches one batch, and records its results once the queue has sent or
+   * failed every email in it.
+   */
+  private void dispatch(OutboxDispatcher dispatcher) throws DBAccessException {
+    dispatcher.dispatchBatch();
+    long deadline = System.currentTimeMillis() + 5000;
+    while (dispatcher.getInFlightCount() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.yield();
+    }
+    dispatcher.recordResults(DBRegistry.getGameDB());
+  }
+
+  @Test
+  public void testOnlyCommittedEmailsAreSent() throws DBAccessException {
+    DBProxy db = DBRegistry.getGameDB();
+    Outbox.add(TO, "outside", "text");
+    assertThrows(InvalidActionException.class, () -> db.inTransaction(() -> {
+      Outbox.add(TO, "rolled back", "text");
+      throw new InvalidActionException("Roll back.");
+    }));
+    assertEquals(1, Outbox.getPendingCount());
+
+    dispatch(new OutboxDispatcher(queue, 10, 1000, 60000, 0, 3));
+    assertEquals(Arrays.asList("a@email.com,b@email.com: outside"), delivered);
+    assertEquals(0, Outbox.getPendingCount());
+    assertEquals(1, count("sent is not null"));
+  }
+
+  @Test
+  public void testSendsInBatches() throws DBAccessException {
+    for (int i = 0; i < 5; i++) {
+      Outbox.add(TO, "email " + i, "text");
+    }
+    OutboxDispatcher dispatcher = new OutboxDispatcher(queue, 2, 1000, 60000, 0, 3);
+    dispatch(dispatcher);
+    assertEquals(2, delivered.size());
+    dispatch(dispatcher);
+    dispatch(dispatcher);
+    assertEquals(5, delivered.size());
+    assertEquals(0, Outbox.getPendingCount());
+  }
+
+  @Test
+  public void testFailedEmailsAreRetriedThenGivenUp() throws DBAccessException {
+    Outbox.add(TO, "bad email", "text");
+    OutboxDispatcher dispatcher = new OutboxDispatcher(queue, 10, 1000, 60000, 0, 2);
+    dispatch(dispatcher);
+    assertEquals(1, count("attempts = 1 and failed is null"));
+    dispatch(dispatcher);
+    assertEquals(2, delivered.size());
+    assertEquals(1, count("attempts = 2 and failed is not null"));
+    assertEquals(0, Outbox.getPendingCount());
+  }
+
+  @Test
+  public void testNextBatchWaitsForTheQueue() throws DBAccessException {
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger attempts = new AtomicInteger();
+    // A queue that would try every email three times, stuck on the first one
+    EmailQueue slow = new EmailQueue(10, 1, 3, 0, email -> {
+      attempts.incrementAndGet();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return false;
+    });
+    try {
+      Outbox.add(TO, "first", "text");
+      Outbox.add(TO, "second", "text");
+      OutboxDispatcher dispatcher = new OutboxDispatcher(slow, 1, 1000, 60000, 0, 3);
+      assertEquals(1, dispatcher.dispatchBatch());
+      assertEquals(0, dispatcher.dispatchBatch());
+
+      release.countDown();
+      long deadline = System.currentTimeMillis() + 5000;
+      while (dispatcher.getInFlightCount() > 0 && System.currentTimeMillis() < deadline) {
+        Thread.yield();
+      }
+      dispatcher.recordResults(DBRegistry.getGameDB());
+      // Tried once by the queue, and left to the outbox to try again
+      assertEquals(1, attempts.get());
+      assertEquals(1, count("attempts = 1 and failed is null"));
+    } finally {
+      slow.shutdown(5000);
+    }
+  }
+
+  @Test
+  public void testBulkEmailsAreDeduplicatedAndChunked() throws DBAccessException {
+    List<String> recipients = new ArrayList<>();
+    for (int i = 0; i < AssassinConstants.EMAIL_CHUNK_SIZE + 1; i++) {
+      recipients.add("player" + i + "@email.com");
+    }
+    // Admins who also play
+    recipients.add("player0@email.com");
+    recipients.add("player1@email.com");
+    assertEquals(2, Outbox.addBulk(recipients, "blast", "text"));
+
+    dispatch(new OutboxDispatcher(queue, 10, 1000, 60000, 0, 3));
+    assertEquals(2, delivered.size());
+    assertTrue(delivered.contains("bcc player" + AssassinConstants.EMAIL_CHUNK_SIZE
+        + "@email.com: blast"));
+    int total = 0;
+    for (String email : delivered) {
+      assertTrue(email, email.startsWith("bcc "));
+      total += email.split(",").length;
+    }
+    assertEquals(AssassinConstants.EMAIL_CHUNK_SIZE + 1, total);
+  }
+
+  @Test
+  public void testNotificationsWaitToBeMerged() throws DBAccessException {
+    DBProxy db = DBRegistry.getGameDB();
+    Outbox.add(TO, "eliminated", "text", 7, "ELIMINATE");
+    Outbox.add(TO, "new targets", "text", 7, "NEW_TARGETS");
+    Outbox.add(TO, "started", "text", 8, "START");
+    Outbox.add(TO, "custom", "text");
+    // Both notifications of game 7 are due when the first is
+    assertEquals(2, count("game = 7 and next_attempt = (select min(next_attempt) from outbox"
+        + " where game = 7)"));
+
+    // Only the email that is not a notification is due right away
+    long now = System.currentTimeMillis();
+    assertEquals(1, Outbox.claim(db, 10, now, now + 60000).size());
+    long later = now + AssassinConstants.DIGEST_WINDOW_MILLIS;
+    // Then one game's notifications at a time
+    List<Digests.Digest> digests = Digests.merge(Outbox.claim(db, 10, later, later + 60000),
+        AssassinConstants.EMAIL_CHUNK_SIZE);
+    assertEquals(1, digests.size());
+    assertEquals("eliminated (and 1 more updates)", digests.get(0).getEmail().getSubject());
+    assertEquals(Arrays.asList("started"), subjects(Outbox.claim(db, 10, later, later + 60000)));
+  }
+
+  @Test
+  public void testBigGamesNotificationsAreClaimedTogether() throws DBAccessException {
+    List<String> players = new ArrayList<>();
+    for (int i = 0; i < AssassinConstants.EMAIL_CHUNK_SIZE * 4; i++) {
+      players.add("player" + i + "@email.com");
+    }
+    assertEquals(4, Outbox.addBulk(players, "started", "text", 7, "START"));
+    Outbox.add(TO, "custom", "text");
+    assertEquals(4, Outbox.addBulk(players, "new targets", "text", 7, "NEW_TARGETS"));
+
+    DBProxy db = DBRegistry.getGameDB();
+    long now = System.currentTimeMillis();
+    assertEquals(Arrays.asList("custom"), subjects(Outbox.claim(db, 3, now, now + 60000)));
+    // More chunks than one batch, claimed together and merged for every player
+    long later = now + AssassinConstants.DIGEST_WINDOW_MILLIS;
+    List<Outbox.Entry> entries = Outbox.claim(db, 3, later, later + 60000);
+    assertEquals(8, entries.size());
+    List<Digests.Digest> digests = Digests.merge(entries, AssassinConstants.EMAIL_CHUNK_SIZE);
+    assertEquals(4, digests.size());
+    for (Digests.Digest digest : digests) {
+      assertEquals("started (and 1 more updates)", digest.getEmail().getSubject());
+    }
+  }
+
+  private static List<String> subjects(List<Outbox.Entry> entries) {
+    List<String> subjects = new ArrayList<>();
+    for (Outbox.Entry entry : entries) {
+      subjects.add(entry.getEmail().getSubject());
+    }
+    return subjects;
+  }
+
+  @Test
+  public void testClaimedEmailsWaitForTheirLease() throws DBAccessException {
+    Outbox.add(TO, "email", "text");
+    DBProxy db = DBRegistry.getGameDB();
+    long now = System.currentTimeMillis();
+    assertEquals(1, Outbox.claim(db, 10, now, now + 60000).size());
+    // As if the server stopped before sending it
+    assertEquals(0, Outbox.claim(db, 10, now, now + 60000).size());
+    assertEquals(1, Outbox.claim(db, 10, now + 60000, now + 120000).size());
+  }
+}
@@ -1,6 +1,8 @@
 package edu.brown.cs.assassin.game;
 
 import edu.brown.cs.assassin.DBTestMethods;
+import edu.brown.cs.assassin.database.DBMethods;
+import edu.brown.cs.assassin.database.DBRegistry;
 import edu.brown.cs.assassin.exception.DBAccessException;
 import edu.brown.cs.assassin.exception.InvalidAccessException;
 import edu.brown.cs.assassin.exception.InvalidActionException;
@@ -699,6 +701,26 @@ public class ActionTests {
     tearDown();
   }
 
+  /**
+   * Tests that Game.generateNewTargets keeps the old targets if new ones cannot be generated.
+   */
+  @Test
+  public void testGameGenerateNewTargetsFailure() throws DBAccessException,
+          InvalidActionException, InvalidAccessException {
+    setUp();
+
+    g.generateNewTargets();
+    DBRegistry.getGameDB().updateDatabase("update team set alive = 0 where id <> ?",
+        DBMethods.parameters(t1));
+
+    assertThrows(InvalidActionException.class, () -> g.generateNewTargets());
+    assertEquals(2, t1.getTargets().size());
+    assertEquals(MessageType.NEW_TARGETS, g.getMessages(1).get(0).getType());
+    assertEquals(1, g.getMessages(5).size());
+
+    tearDown();
+  }
+
   /**
    * Tests that Game.revivePlayersOnLivingTeams makes the right players living and keeps the
    * right players dead, assigns new kill codes to revived players, and recores this in a message.
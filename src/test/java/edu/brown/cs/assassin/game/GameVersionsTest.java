@@ -0,0 +1,66 @@
+package edu.brown.cs.assassin.game;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.brown.cs.assassin.DBTestMethods;
+import edu.brown.cs.assassin.exception.DBAccessException;
+import edu.brown.cs.assassin.exception.InvalidAccessException;
+import edu.brown.cs.assassin.exception.InvalidActionException;
+
+/**
+ * Tests that changes to a game bump its version and reads do not.
+ */
+public class GameVersionsTest {
+  /**
+   * Sets up the database and game classes.
+   */
+  @Before
+  public void setUp() throws DBAccessException, InvalidActionException {
+    DBTestMethods.setUp();
+    DBTestMethods.addUsers(1);
+  }
+
+  /**
+   * Reconnects the game classes back to the main databases.
+   */
+  @After
+  public void tearDown() {
+    DBTestMethods.tearDown();
+  }
+
+  @Test
+  public void testChangesBumpVersions()
+      throws DBAccessException, InvalidAccessException, InvalidActionException {
+    long lists = GameVersions.getGameListVersion();
+    Game g = Game.addGame("Test game", "Have fun", 2, Collections.emptyList(), 1, false);
+    assertTrue(GameVersions.getGameListVersion() > lists);
+
+    long version = GameVersions.getVersion(g.getID());
+    Team t = Team.addTeam("Sharks", g);
+    assertTrue(GameVersions.getVersion(g.getID()) > version);
+
+    version = GameVersions.getVersion(g.getID());
+    lists = GameVersions.getGameListVersion();
+    Player.addPlayer(User.fromID(1), t);
+    assertTrue(GameVersions.getVersion(g.getID()) > version);
+    assertTrue(GameVersions.getGameListVersion() > lists);
+
+    version = GameVersions.getVersion(g.getID());
+    Message.addMessage(g, MessageType.CUSTOM, "Hello");
+    assertTrue(GameVersions.getVersion(g.getID()) > version);
+
+    // Reads change nothing
+    version = GameVersions.getVersion(g.getID());
+    g.getSnapshot();
+    g.getMessages(10);
+    assertEquals(version, GameVersions.getVersion(g.getID()));
+    assertTrue(!GameVersions.getLastModified(g.getID()).isBefore(GameVersions.getStartTime()));
+  }
+}
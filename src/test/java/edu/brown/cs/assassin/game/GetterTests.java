@@ -4,10 +4,13 @@ import static edu.brown.cs.assassin.DBTestMethods.addUsers;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
 import org.junit.After;
 import org.junit.Before;
@@ -324,6 +327,117 @@ public class GetterTests {
     assertEquals("A message", m1.getField(0));
     assertEquals(g1, m1.getGame());
 
+    // The feed loads messages with and without fields in one query
+    Message m3 = Message.addMessage(g1, MessageType.ELIMINATE, "Sharks", "Jets");
+    List<Message> feed = g1.getMessages(5);
+    assertEquals(Arrays.asList(m3, m2, m1), feed);
+    assertEquals(MessageType.ELIMINATE, feed.get(0).getType());
+    assertEquals("Sharks", feed.get(0).getField(0));
+    assertEquals("Jets", feed.get(0).getField(1));
+    assertEquals(MessageType.START, feed.get(1).getType());
+    assertThrows(InvalidAccessException.class, () -> feed.get(1).getField(0));
+    assertEquals("A message", feed.get(2).getField(0));
+    assertEquals(m1.getTime(), feed.get(2).getTime());
+    assertEquals(2, g1.getMessages(2).size());
+
+    tearDown();
+  }
+
+  @Test
+  public void testMessagePages()
+      throws DBAccessException, InvalidActionException, InvalidAccessException {
+    setUp();
+
+    addUsers(1);
+    Game g1 = Game.addGame("Test game", "Have fun", 2, Collections.singletonList(User.fromID(1)), 3,
+        false);
+    Game g2 = Game.addGame("Other game", "Have fun", 2, Collections.singletonList(User.fromID(1)),
+        3, false);
+    Message m1 = Message.addMessage(g1, MessageType.CUSTOM, "First");
+    Message m2 = Message.addMessage(g1, MessageType.START);
+    Message.addMessage(g2, MessageType.START);
+    Message m3 = Message.addMessage(g1, MessageType.CUSTOM, "Third");
+    Message m4 = Message.addMessage(g1, MessageType.END);
+
+    // Older history, one page at a time
+    assertEquals(Arrays.asList(m3, m2), g1.getMessagesBefore(m4.getID(), 2));
+    assertEquals(Collections.singletonList(m1), g1.getMessagesBefore(m2.getID(), 2));
+    assertEquals(Collections.emptyList(), g1.getMessagesBefore(m1.getID(), 2));
+
+    // Only the messages since the newest one seen, oldest page first
+    assertEquals(Arrays.asList(m3, m2), g1.getMessagesAfter(m1.getID(), 2));
+    assertEquals(Collections.singletonList(m4), g1.getMessagesAfter(m3.getID(), 2));
+    assertEquals(Collections.emptyList(), g1.getMessagesAfter(m4.getID(), 2));
+    assertEquals("Third", g1.getMessagesAfter(m2.getID(), 1).get(0).getField(0));
+
+    // Page sizes below one are raised to one
+    assertEquals(Collections.singletonList(m3), g1.getMessagesBefore(m4.getID(), 0));
+    assertEquals(Collections.singletonList(m2), g1.getMessagesAfter(m1.getID(), -5));
+
+    tearDown();
+  }
+
+  /**
+   * Tests that a GameSnapshot matches what the individual getters return.
+   */
+  @Test
+  public void testGameSnapshot()
+      throws DBAccessException, InvalidActionException, InvalidAccessException {
+    addGames();
+    t2.addTarget(t3);
+    t2.addTarget(t2);
+
+    GameSnapshot snapshot = g3.getSnapshot();
+    assertEquals(g3.getID(), snapshot.getID());
+    assertEquals(g3.getMaxTeamSize(), snapshot.getMaxTeamSize());
+    assertEquals(g3.getNumTargets(), snapshot.getNumTargets());
+    assertEquals(g3.getStatus(), snapshot.getStatus());
+    assertEquals(g3.getJoinCode(), snapshot.getJoinCode());
+    assertTrue(snapshot.isAdmin(u2));
+    assertFalse(snapshot.isAdmin(u3));
+
+    assertEquals(3, snapshot.getTeams().size());
+    GameSnapshot.TeamView team4 = snapshot.getTeam(t4.getID());
+    assertEquals(3, team4.getPlayers().size());
+    assertEquals(u7.getName(), team4.getPlayers().get(1).getName());
+    assertTrue(team4.getPlayers().get(1).isAlive());
+
+    GameSnapshot.PlayerView player = snapshot.getPlayer(u4);
+    assertEquals(p3.getID(), player.getID());
+    assertEquals(p3.getKillCode(), player.getKillCode());
+    assertEquals(t3.getID(), snapshot.getTeamOf(player).getID());
+    assertNull(snapshot.getPlayer(u1));
+
+    // Self-targets are hidden, as in Team.getDisplayedTargets
+    GameSnapshot.TeamView team2 = snapshot.getTeam(t2.getID());
+    assertEquals(1, snapshot.getDisplayedTargets(team2).size());
+    assertEquals(t3.getID(), snapshot.getDisplayedTargets(team2).get(0).getID());
+
+    tearDown();
+  }
+
+  @Test
+  public void testTargetView()
+      throws DBAccessException, InvalidActionException, InvalidAccessException {
+    addGames();
+    t2.addTarget(t3);
+    t2.addTarget(t2);
+
+    // Self-targets are hidden, and only living players are named
+    List<TargetView> targets = t2.getTargetView();
+    assertEquals(1, targets.size());
+    assertEquals(t3.getCodename(), targets.get(0).getCodename());
+    assertEquals(Arrays.asList(u4.getName(), u5.getName()), targets.get(0).getPlayerNames());
+    assertTrue(p3.kill(p4).didKill());
+    assertEquals(Collections.singletonList(u4.getName()),
+        t2.getTargetView().get(0).getPlayerNames());
+
+    // Anonymous games name no players
+    g3.changeAnonymity(true);
+    assertEquals(t3.getCodename(), t2.getTargetView().get(0).getCodename());
+    assertTrue(t2.getTargetView().get(0).getPlayerNames().isEmpty());
+    assertTrue(t3.getTargetView().isEmpty());
+
     tearDown();
   }
 }
@@ -4,7 +4,9 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -138,6 +140,26 @@ public class GraphTest {
     tearDown();
   }
 
+  /**
+   * Tests BFS scores for a few lists of target numbers on 8 players.
+   */
+  @Test
+  public void bfsScores() {
+    setUp(8);
+    Graph<TestPlayer> game = new Graph<>(players, 1);
+
+    // Going around the circle: distances 1 to 7, and 8 back to player 0
+    assertEquals(3.0, game.bfs(new HashSet<>(Arrays.asList(1))), 0);
+    // Distances 1, 2, 1, 2, 3, 2, 3, and 4 back to player 0
+    assertEquals(3.0, game.bfs(new HashSet<>(Arrays.asList(1, 3))), 0);
+    // Only the even players can be reached
+    assertEquals(Double.MAX_VALUE, game.bfs(new HashSet<>(Arrays.asList(2, 4))), 0);
+    // Scores don't depend on the previous BFS
+    assertEquals(3.0, game.bfs(new HashSet<>(Arrays.asList(3, 1))), 0);
+
+    tearDown();
+  }
+
   /**
    * Tests game with 2 players.
    */
@@ -0,0 +1,79 @@
+package edu.brown.cs.assassin.gui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.brown.cs.assassin.DBTestMethods;
+import edu.brown.cs.assassin.database.DBProxy;
+import edu.brown.cs.assassin.database.DBRegistry;
+import edu.brown.cs.assassin.exception.DBAccessException;
+import edu.brown.cs.assassin.exception.InvalidAccessException;
+import edu.brown.cs.assassin.exception.InvalidActionException;
+import edu.brown.cs.assassin.game.Game;
+import edu.brown.cs.assassin.game.Message;
+import edu.brown.cs.assassin.game.MessageType;
+
+public class KillFeedCacheTest {
+  private Game game;
+
+  /**
+   * Clears the test databases and adds one game with one message.
+   */
+  @Before
+  public void setUp() throws DBAccessException {
+    DBTestMethods.setUp();
+    game = Game.addGame("Game", "Rules", 2, Collections.emptyList(), 1, false);
+    Message.addMessage(game, MessageType.START);
+  }
+
+  /**
+   * Reconnects the game classes back to the main databases.
+   */
+  @After
+  public void tearDown() {
+    DBTestMethods.tearDown();
+  }
+
+  private static long queries() throws DBAccessException {
+    DBProxy db = DBRegistry.getGameDB();
+    return db.getStatementCacheHits() + db.getStatementCacheMisses();
+  }
+
+  @Test
+  public void testAppendsWithoutQueries() throws DBAccessException, InvalidAccessException {
+    String feed = KillFeedCache.getFeed(game, 15);
+    assertEquals("<div class=\"feed-message\">The game has started!</div>", feed);
+
+    Message.addMessage(game, MessageType.ELIMINATE, "Sharks", "Jets");
+    long before = queries();
+    feed = KillFeedCache.getFeed(game, 15);
+    assertEquals(before, queries());
+    assertTrue(feed.startsWith("<div class=\"feed-message\"><span class = \"message-emphasis\">"
+        + "Sharks</span> eliminated"));
+    assertTrue(feed.endsWith("The game has started!</div>"));
+
+    // Only the latest messages are served
+    assertFalse(KillFeedCache.getFeed(game, 1).contains("started"));
+    assertEquals(KillFeedCache.render(game.getMessages(2)), KillFeedCache.getFeed(game, 2));
+  }
+
+  @Test
+  public void testRolledBackMessagesAreNotAppended() throws DBAccessException,
+      InvalidAccessException {
+    String feed = KillFeedCache.getFeed(game, 15);
+    DBProxy db = DBRegistry.getGameDB();
+    assertThrows(InvalidActionException.class, () -> db.inTransaction(() -> {
+      Message.addMessage(game, MessageType.END);
+      throw new InvalidActionException("Abandoned.");
+    }));
+    assertEquals(feed, KillFeedCache.getFeed(game, 15));
+  }
+}
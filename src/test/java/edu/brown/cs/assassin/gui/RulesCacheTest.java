@@ -0,0 +1,44 @@
+package edu.brown.cs.assassin.gui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.brown.cs.assassin.DBTestMethods;
+import edu.brown.cs.assassin.exception.DBAccessException;
+import edu.brown.cs.assassin.game.Game;
+
+public class RulesCacheTest {
+  /**
+   * Clears the test databases.
+   */
+  @Before
+  public void setUp() throws DBAccessException {
+    DBTestMethods.setUp();
+  }
+
+  /**
+   * Reconnects the game classes back to the main databases.
+   */
+  @After
+  public void tearDown() {
+    DBTestMethods.tearDown();
+  }
+
+  @Test
+  public void testRulesRenderedOnce() throws DBAccessException {
+    Game game = Game.addGame("Game", "*Have* fun", 2, Collections.emptyList(), 1, false);
+    String html = RulesCache.getRules(game.getID(), game.getRules());
+    assertEquals("<p><em>Have</em> fun</p>\n", html);
+    assertSame(html, RulesCache.getRules(game.getID(), game.getRules()));
+
+    game.changeRules("**No** running");
+    assertEquals("<p><strong>No</strong> running</p>\n",
+        RulesCache.getRules(game.getID(), game.getRules()));
+  }
+}